@@ -19,6 +19,9 @@ public class Index {
         new Item().run();
         new SalesStaff().run();
         LOGGER.info("数据索引耗时: {}", TimeUtils.getTimeDes(System.currentTimeMillis()-start));
+        if (!Output.getFailedIndices().isEmpty()) {
+            LOGGER.error("导出失败或者不完整的索引: {}", Output.getFailedIndices());
+        }
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,81 @@
+package org.apdplat.data.generator.generator;
+
+import java.util.Random;
+
+/**
+ * 别名法(Vose)抽样, 预处理O(n), 每次抽样O(1): 一次随机选桶, 一次随机决定取桶本身还是它的别名
+ */
+public class AliasTable implements IntDistribution {
+    private final float[] probabilities;
+    private final int[] aliases;
+
+    /**
+     * @param weights weights[i]是整数i + 1的权重, 不需要归一化
+     */
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("权重不能为空");
+        }
+        double total = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("权重必须是非负的有限数: " + weight);
+            }
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("权重之和必须大于0");
+        }
+        probabilities = new float[n];
+        aliases = new int[n];
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probabilities[less] = (float) scaled[less];
+            aliases[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // 剩下的桶由于浮点误差只差一点点就是1
+        while (largeCount > 0) {
+            int i = large[--largeCount];
+            probabilities[i] = 1;
+            aliases[i] = i;
+        }
+        while (smallCount > 0) {
+            int i = small[--smallCount];
+            probabilities[i] = 1;
+            aliases[i] = i;
+        }
+    }
+
+    @Override
+    public int size() {
+        return probabilities.length;
+    }
+
+    @Override
+    public int next(Random random) {
+        int i = random.nextInt(probabilities.length);
+        return (random.nextFloat() < probabilities[i] ? i : aliases[i]) + 1;
+    }
+}
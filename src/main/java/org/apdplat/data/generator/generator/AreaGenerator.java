@@ -1,15 +1,13 @@
 package org.apdplat.data.generator.generator;
 
 import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.apdplat.data.generator.sink.RowSink;
+import org.apdplat.data.generator.sink.Sinks;
 import org.apdplat.data.generator.utils.AreaUtil;
 import org.apdplat.data.generator.utils.MultiResourcesUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-
 /**
  * Created by ysc on 18/04/2018.
  */
@@ -20,17 +18,12 @@ public class AreaGenerator {
         MySQLUtils.clean("area");
     }
     public static int generate(){
-        Connection con = MySQLUtils.getConnection();
-        if(con == null){
+        RowSink sink = Sinks.open("area", "id", "city", "city_full", "province", "province_full", "longitude", "latitude");
+        if(sink == null){
             return 0;
         }
         int count = 0;
-        PreparedStatement pst = null;
-        ResultSet rs = null;
-        String sql = "insert into area (id, city, city_full, province, province_full, longitude, latitude) values(?, ?, ?, ?, ?, ?, ?);";
         try {
-            con.setAutoCommit(false);
-            pst = con.prepareStatement(sql);
             for(String line : MultiResourcesUtils.load("area_info.txt")){
                 //id    city_id city    city_full   province_id province    province_full
                 String[] attr = line.split("_");
@@ -47,23 +40,22 @@ public class AreaGenerator {
                         continue;
                     }
                     count++;
-                    pst.setInt(1, count);
-                    pst.setString(2, city);
-                    pst.setString(3, city_full);
-                    pst.setString(4, province);
-                    pst.setString(5, province_full);
-                    pst.setFloat(6, longitude);
-                    pst.setFloat(7, latitude);
-                    pst.addBatch();
+                    sink.setInt(1, count);
+                    sink.setString(2, city);
+                    sink.setString(3, city_full);
+                    sink.setString(4, province);
+                    sink.setString(5, province_full);
+                    sink.setFloat(6, longitude);
+                    sink.setFloat(7, latitude);
+                    sink.addRow();
                 }
             }
-            pst.executeBatch();
-            con.commit();
+            sink.commit();
             LOGGER.info("保存到数据库成功");
         } catch (Exception e) {
             LOGGER.error("保存到数据库失败", e);
         } finally {
-            MySQLUtils.close(con, pst, rs);
+            sink.close();
         }
         return count;
     }
@@ -0,0 +1,373 @@
+package org.apdplat.data.generator.generator;
+
+import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.apdplat.data.generator.sink.RowSink;
+import org.apdplat.data.generator.sink.Sinks;
+import org.apdplat.data.generator.utils.Config;
+import org.apdplat.data.generator.utils.RowRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * 批量生成的断点续传, 写MySQL并且generator.checkpoint不为false时启用
+ * 每个块提交时, 在同一个事务中向generator_checkpoint写入一行(任务名, 范围, 种子), 块的数据和完成记录要么都在要么都不在
+ * 本次运行的参数、随机种子、预先分配的id等写入generator_run, 上次运行没有完成并且参数相同时, 这次运行继续上次的进度:
+ * 使用上次的种子和id, 跳过已经完成的范围, 只重新生成没有完成的部分, 每行的数据只和种子及行号有关, 所以结果和一次跑完相同
+ * 分片生成时generator_run也是各个分片之间协调的地方: 0号分片start, 其它分片join, 使用0号分片保存的种子和id
+ */
+public class Checkpoint {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Checkpoint.class);
+
+    private static final String PROGRESS_TABLE = "generator_checkpoint";
+    private static final String RUN_TABLE = "generator_run";
+
+    private static final boolean ENABLED = Sinks.isMySQL() && Config.getBooleanValue("generator.checkpoint", true);
+    private static final Map<String, String> VALUES = new HashMap<>();
+    // 等待其它分片的最长时间
+    private static final long WAIT_MILLIS = Config.getLongValue("generator.shardWaitMinutes", 24 * 60) * 60 * 1000;
+    // 本次运行中有块没有完成
+    private static volatile boolean incomplete;
+    // 加入了0号分片开始的运行, 只读取不保存运行信息
+    private static volatile boolean joined;
+
+    private Checkpoint() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * 开始一次运行, 在生成任何数据之前调用
+     * @param params 影响生成结果的配置, 和上次未完成的运行相同时才继续
+     * @return true表示继续上次的运行
+     */
+    public static boolean start(String params) {
+        if (!ENABLED) {
+            return false;
+        }
+        execute("CREATE TABLE IF NOT EXISTS `" + PROGRESS_TABLE + "` (`task` varchar(64) NOT NULL, `chunk_start` int(11) NOT NULL, "
+                + "`chunk_end` int(11) NOT NULL, `seed` bigint(20) NOT NULL, PRIMARY KEY (`task`, `chunk_start`)) ENGINE = InnoDB");
+        execute("CREATE TABLE IF NOT EXISTS `" + RUN_TABLE + "` (`name` varchar(64) NOT NULL, `value` varchar(4096) NOT NULL, "
+                + "PRIMARY KEY (`name`)) ENGINE = InnoDB DEFAULT CHARSET = utf8");
+        Map<String, String> last = loadRun();
+        if (!last.isEmpty() && !isFinished(last) && params.equals(last.get("params"))) {
+            VALUES.putAll(last);
+            long seed = Long.parseLong(last.get("seed"));
+            RowRandom.resume(seed);
+            LOGGER.info("继续上次没有完成的运行, 随机种子: {}", seed);
+            return true;
+        }
+        if (!last.isEmpty() && !isFinished(last)) {
+            LOGGER.warn("上次的运行没有完成, 但是参数已经改变, 重新开始");
+        }
+        execute("TRUNCATE TABLE `" + PROGRESS_TABLE + "`");
+        execute("TRUNCATE TABLE `" + RUN_TABLE + "`");
+        put("params", params);
+        put("seed", Long.toString(RowRandom.getSeed()));
+        return false;
+    }
+
+    /**
+     * 1号及以后的分片调用, 等待0号分片以相同的参数开始运行并生成完维度表
+     */
+    public static void join(String params) {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (true) {
+            Map<String, String> last = loadRun();
+            if (params.equals(last.get("params")) && "ready".equals(last.get("dimensions")) && !isFinished(last)) {
+                VALUES.putAll(last);
+                joined = true;
+                RowRandom.resume(Long.parseLong(last.get("seed")));
+                LOGGER.info("分片 {} 加入0号分片开始的运行", Shard.getIndex());
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("等待0号分片生成维度表超时");
+            }
+            LOGGER.info("等待0号分片生成维度表");
+            sleep();
+        }
+    }
+
+    /**
+     * 0号分片生成完维度表并分配好id之后调用, 其它分片开始生成
+     */
+    public static void markDimensionsReady() {
+        if (ENABLED) {
+            put("dimensions", "ready");
+        }
+    }
+
+    /**
+     * 继续上次的运行时, 上次是否已经生成完维度表
+     */
+    public static boolean isDimensionsReady() {
+        return "ready".equals(VALUES.get("dimensions"));
+    }
+
+    private static boolean isFinished(Map<String, String> values) {
+        return "true".equals(values.get("finished"));
+    }
+
+    /**
+     * 本次运行中的一个值, 继续上次的运行时使用上次保存的值, 否则用supplier计算并保存
+     */
+    public static String getValue(String name, Supplier<String> supplier) {
+        if (!ENABLED) {
+            return supplier.get();
+        }
+        synchronized (VALUES) {
+            String value = VALUES.get(name);
+            if (value == null) {
+                value = supplier.get();
+                if (joined) {
+                    LOGGER.warn("0号分片没有保存 {}, 使用本分片计算的值: {}", name, value);
+                } else {
+                    put(name, value);
+                }
+            } else {
+                LOGGER.info("使用上次运行保存的 {}: {}", name, value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * 当前分片的所有块都完成时记录下来, 有块没有完成时返回false
+     */
+    public static boolean done() {
+        if (!ENABLED) {
+            return true;
+        }
+        if (incomplete) {
+            LOGGER.error("有块没有完成, 再次运行会继续生成没有完成的部分");
+            return false;
+        }
+        put("done." + Shard.getIndex(), "true");
+        return true;
+    }
+
+    /**
+     * 0号分片等待所有分片完成, 超时返回false
+     */
+    public static boolean awaitShards() {
+        if (!ENABLED) {
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (true) {
+            Map<String, String> values = loadRun();
+            int done = 0;
+            for (int i = 0; i < Shard.getCount(); i++) {
+                if ("true".equals(values.get("done." + i))) {
+                    done++;
+                }
+            }
+            if (done == Shard.getCount()) {
+                return true;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                LOGGER.error("等待其它分片超时, 完成的分片数: {}/{}", done, Shard.getCount());
+                return false;
+            }
+            LOGGER.info("等待其它分片完成, 完成的分片数: {}/{}", done, Shard.getCount());
+            sleep();
+        }
+    }
+
+    /**
+     * 所有分片都完成并且索引已经重建后由0号分片调用, 下次运行重新开始
+     */
+    public static void finish() {
+        if (ENABLED) {
+            put("finished", "true");
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待其它分片被中断", e);
+        }
+    }
+
+    /**
+     * 在shared的事务中记录块[start, end)已经完成, 在shared提交之前调用
+     */
+    static void record(RowSink shared, String task, int start, int end) throws Exception {
+        if (!ENABLED) {
+            return;
+        }
+        RowSink sink = Sinks.open(shared, PROGRESS_TABLE, "task", "chunk_start", "chunk_end", "seed");
+        if (sink == null) {
+            throw new IllegalStateException("打开 " + PROGRESS_TABLE + " 失败");
+        }
+        try {
+            sink.setString(1, task);
+            sink.setInt(2, start);
+            sink.setInt(3, end);
+            sink.setString(4, Long.toString(RowRandom.getSeed()));
+            sink.addRow();
+            sink.flush();
+        } finally {
+            sink.close();
+        }
+    }
+
+    /**
+     * 读取任务已经完成的范围, 不启用时返回null
+     * 读取失败时抛出IllegalStateException, 不能当成什么都没有完成, 否则会重新生成已经提交的块, 主键重复或者数据重复
+     */
+    static Progress load(String task) {
+        if (!ENABLED) {
+            return null;
+        }
+        Progress progress = new Progress(task);
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            throw new IllegalStateException("读取进度失败, 没有数据库连接, task: " + task);
+        }
+        PreparedStatement pst = null;
+        ResultSet rs = null;
+        try {
+            pst = con.prepareStatement("select chunk_start, chunk_end from " + PROGRESS_TABLE + " where task = ?");
+            pst.setString(1, task);
+            rs = pst.executeQuery();
+            while (rs.next()) {
+                progress.completed.put(rs.getInt(1), rs.getInt(2));
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("读取进度失败, task: " + task, e);
+        } finally {
+            MySQLUtils.close(con, pst, rs);
+        }
+        if (!progress.completed.isEmpty()) {
+            LOGGER.info("{} 已经完成的块数: {}", task, progress.completed.size());
+        }
+        return progress;
+    }
+
+    /**
+     * 一个任务已经完成的范围, 块的边界和上次运行不同时(比如工作线程数变了)也能正确跳过
+     */
+    static class Progress {
+        private final String task;
+        // 已完成范围的start -> end, 各个范围不重叠
+        private final TreeMap<Integer, Integer> completed = new TreeMap<>();
+
+        private Progress(String task) {
+            this.task = task;
+        }
+
+        /**
+         * [start, end)中没有完成的部分
+         */
+        List<int[]> remaining(int start, int end) {
+            List<int[]> ranges = new ArrayList<>();
+            int position = start;
+            Map.Entry<Integer, Integer> entry = completed.floorEntry(start);
+            if (entry != null && entry.getValue() > position) {
+                position = entry.getValue();
+            }
+            for (Map.Entry<Integer, Integer> next : completed.subMap(start, true, end, false).entrySet()) {
+                if (next.getKey() > position) {
+                    ranges.add(new int[]{position, next.getKey()});
+                }
+                position = Math.max(position, next.getValue());
+            }
+            if (position < end) {
+                ranges.add(new int[]{position, end});
+            }
+            return ranges;
+        }
+
+        /**
+         * 所有块都处理后检查[start, end)是否都已经完成
+         */
+        void verify(int start, int end) {
+            Progress latest;
+            try {
+                latest = load(task);
+            } catch (IllegalStateException e) {
+                incomplete = true;
+                LOGGER.error("无法确认 {} 是否全部完成", task, e);
+                return;
+            }
+            if (latest != null && !latest.remaining(start, end).isEmpty()) {
+                incomplete = true;
+                LOGGER.error("{} 有 {} 个范围没有完成", task, latest.remaining(start, end).size());
+            }
+        }
+    }
+
+    private static Map<String, String> loadRun() {
+        Map<String, String> values = new HashMap<>();
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            return values;
+        }
+        PreparedStatement pst = null;
+        ResultSet rs = null;
+        try {
+            pst = con.prepareStatement("select name, value from " + RUN_TABLE);
+            rs = pst.executeQuery();
+            while (rs.next()) {
+                values.put(rs.getString(1), rs.getString(2));
+            }
+        } catch (Exception e) {
+            LOGGER.error("读取运行信息失败", e);
+        } finally {
+            MySQLUtils.close(con, pst, rs);
+        }
+        return values;
+    }
+
+    private static void put(String name, String value) {
+        VALUES.put(name, value);
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            return;
+        }
+        PreparedStatement pst = null;
+        try {
+            pst = con.prepareStatement("replace into " + RUN_TABLE + " (name, value) values (?, ?)");
+            pst.setString(1, name);
+            pst.setString(2, value);
+            pst.execute();
+        } catch (Exception e) {
+            LOGGER.error("保存运行信息失败, {}: {}", name, value, e);
+        } finally {
+            MySQLUtils.close(con, pst);
+        }
+    }
+
+    private static void execute(String sql) {
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            return;
+        }
+        Statement st = null;
+        try {
+            st = con.createStatement();
+            st.execute(sql);
+        } catch (Exception e) {
+            LOGGER.error("执行失败: {}", sql, e);
+        } finally {
+            MySQLUtils.close(con, st);
+        }
+    }
+}
@@ -1,16 +1,13 @@
 package org.apdplat.data.generator.generator;
 
 import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.apdplat.data.generator.sink.RowSink;
+import org.apdplat.data.generator.sink.Sinks;
+import org.apdplat.data.generator.utils.RowRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Created by ysc on 18/04/2018.
@@ -23,122 +20,110 @@ public class ContractDetailGenerator {
         MySQLUtils.clean("contract_detail");
     }
 
-    public static void generate(int contractCount, int contractDetailLimit, int itemQuantityLimit, Map<Integer, Float> items, List<String> dayStrs, int batchSize) {
-        int threadCount = 3000;
-        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
-
-        int chunkSize = contractCount / threadCount;
-        for (int i = 0; i < threadCount; i++) {
-            int start = i * chunkSize + 1;
-            int end = (i == threadCount - 1) ? contractCount + 1 : start + chunkSize;
-            executorService.submit(new InsertTask(start, end, contractDetailLimit, itemQuantityLimit, items, dayStrs, batchSize));
-        }
-
-        executorService.shutdown();
-        try {
-            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            LOGGER.error("线程池等待中断", e);
-        }
-        LOGGER.info("所有线程插入完成");
+    /**
+     * @param firstContractId ContractGenerator使用的第一个合同id, 第j(从1开始)个合同的id为firstContractId + j - 1
+     * @param firstDetailId 预先分配的第一个合同明细id, 每个合同预留contractDetailLimit个明细id
+     * @param itemPrices 商品价格表, 下标为商品id
+     */
+    public static void generate(int contractCount, int firstContractId, int firstDetailId, int contractDetailLimit, int itemQuantityLimit, float[] itemPrices, List<String> dayStrs, int batchSize) {
+        IntDistribution items = Distributions.create("distribution.item", itemPrices.length - 1);
+        IntDistribution days = Distributions.createForDays("distribution.day", dayStrs);
+        //分片生成时只生成当前分片的一段
+        int[] slice = Shard.slice(1, contractCount + 1);
+        GenerationScheduler.run("contract_detail", slice[0], slice[1], GenerationScheduler.chunkSize(slice[1] - slice[0], batchSize),
+                () -> new InsertTask(firstContractId, firstDetailId, contractDetailLimit, itemQuantityLimit, itemPrices, items, dayStrs, days, batchSize));
     }
 
-    private static class InsertTask implements Runnable {
-        private final int start;
-        private final int end;
+    private static class InsertTask implements GenerationScheduler.RangeTask {
+        private final int firstContractId;
+        private final int firstDetailId;
         private final int contractDetailLimit;
         private final int itemQuantityLimit;
-        private final Map<Integer, Float> items;
+        private final float[] itemPrices;
+        private final IntDistribution items;
         private final List<String> dayStrs;
+        private final IntDistribution days;
         private final int batchSize;
-        private final Random random = new Random(System.nanoTime());
-        private final Set<Integer> itemUsed = new HashSet<>();
+        private final RowRandom random = new RowRandom("contract_detail");
+        private final DistinctSampler sampler;
+        private final int[] itemIds;
 
-        InsertTask(int start, int end, int contractDetailLimit, int itemQuantityLimit, Map<Integer, Float> items, List<String> dayStrs, int batchSize) {
-            this.start = start;
-            this.end = end;
+        InsertTask(int firstContractId, int firstDetailId, int contractDetailLimit, int itemQuantityLimit, float[] itemPrices, IntDistribution items, List<String> dayStrs, IntDistribution days, int batchSize) {
+            this.firstContractId = firstContractId;
+            this.firstDetailId = firstDetailId;
+            this.sampler = new DistinctSampler(contractDetailLimit);
+            this.itemIds = new int[contractDetailLimit];
             this.contractDetailLimit = contractDetailLimit;
             this.itemQuantityLimit = itemQuantityLimit;
+            this.itemPrices = itemPrices;
             this.items = items;
             this.dayStrs = dayStrs;
+            this.days = days;
             this.batchSize = batchSize;
         }
 
         @Override
-        public void run() {
-            try (Connection con = MySQLUtils.getConnection()) {
-                if (con == null) {
-                    return;
-                }
-                con.setAutoCommit(false);
-                String sql = "insert into contract_detail (item_id, item_quantity, detail_price, contract_id, sign_day) values(?, ?, ?, ?, ?);";
-                try (PreparedStatement pst = con.prepareStatement(sql)) {
-                    for (int j = start; j < end; j++) {
-                        itemUsed.clear();
-                        float totalPrice = 0;
-                        int len = random.nextInt(contractDetailLimit) + 1;
-                        for (int i = 0; i < len; i++) {
-                            int r = random.nextInt(dayStrs.size());
-                            String dayStr = dayStrs.get(r);
-                            int itemId = random.nextInt(items.size()) + 1;
-                            while (itemUsed.contains(itemId)) {
-                                itemId = random.nextInt(items.size()) + 1;
-                            }
-                            itemUsed.add(itemId);
-                            int itemQuantity = random.nextInt(itemQuantityLimit) + 1;
-                            float detailPrice = items.get(itemId) * itemQuantity;
-                            totalPrice += detailPrice;
-                            pst.setInt(1, itemId);
-                            pst.setInt(2, itemQuantity);
-                            pst.setFloat(3, detailPrice);
-                            pst.setInt(4, j);
-                            pst.setString(5, dayStr);
-                            pst.addBatch();
+        public void run(int start, int end) {
+            RowSink sink = Sinks.open("contract_detail", "id", "item_id", "item_quantity", "detail_price", "contract_id", "sign_day");
+            if (sink == null) {
+                return;
+            }
+            RowSink priceSink = Sinks.openUpdate(sink, "contract", "id", "contract_price");
+            try {
+                for (int j = start; j < end; j++) {
+                    int contractId = firstContractId + j - 1;
+                    int detailId = firstDetailId + (j - 1) * contractDetailLimit;
+                    random.seek(j - 1);
+                    float totalPrice = 0;
+                    int len = sampler.sample(items, random.nextInt(contractDetailLimit) + 1, random, itemIds);
+                    for (int i = 0; i < len; i++) {
+                        String dayStr = dayStrs.get(days.next(random) - 1);
+                        int itemId = itemIds[i];
+                        int itemQuantity = random.nextInt(itemQuantityLimit) + 1;
+                        float detailPrice = itemPrices[itemId] * itemQuantity;
+                        totalPrice += detailPrice;
+                        sink.setInt(1, detailId + i);
+                        sink.setInt(2, itemId);
+                        sink.setInt(3, itemQuantity);
+                        sink.setFloat(4, detailPrice);
+                        sink.setInt(5, contractId);
+                        sink.setString(6, dayStr);
+                        sink.addRow();
 
-                            if ((i + 1) % batchSize == 0) {
-                                try {
-                                    pst.executeBatch();
-                                    // 手动清空批处理命令（部分驱动可能需要）
-                                    pst.clearBatch();
-                                } catch (Exception e) {
-                                    try {
-                                        con.rollback();
-                                        pst.clearBatch(); // 异常时也清空批处理命令
-                                    } catch (Exception rollbackEx) {
-                                        LOGGER.error("线程 {} 回滚失败，范围: {} - {}", Thread.currentThread().getName(), start, end - 1, rollbackEx);
-                                    }
-                                    LOGGER.error("线程 {} 执行批处理失败，范围: {} - {}", Thread.currentThread().getName(), start, end - 1, e);
-                                }
-                            }
+                        if ((i + 1) % batchSize == 0) {
+                            sink.flush();
                         }
-                        updateContractPrice(con, j, totalPrice);
-                    }
-                    pst.executeBatch();
-                    con.commit();
-                    LOGGER.info("线程 {} 插入完成，范围: {} - {}", Thread.currentThread().getName(), start, end - 1);
-                } catch (Exception e) {
-                    try {
-                        con.rollback();
-                    } catch (Exception rollbackEx) {
-                        LOGGER.error("线程 {} 回滚失败，范围: {} - {}", Thread.currentThread().getName(), start, end - 1, rollbackEx);
                     }
-                    LOGGER.error("线程 {} 插入失败，范围: {} - {}", Thread.currentThread().getName(), start, end - 1, e);
+                    updateContractPrice(priceSink, contractId, totalPrice);
                 }
+                sink.flush();
+                if (priceSink != null) {
+                    priceSink.flush();
+                }
+                Checkpoint.record(sink, "contract_detail", start, end);
+                sink.commit();
+                LOGGER.info("线程 {} 插入完成，范围: {} - {}", Thread.currentThread().getName(), start, end - 1);
             } catch (Exception e) {
-                LOGGER.error("获取数据库连接失败", e);
+                sink.rollback();
+                LOGGER.error("线程 {} 插入失败，范围: {} - {}", Thread.currentThread().getName(), start, end - 1, e);
+            } finally {
+                if (priceSink != null) {
+                    priceSink.close();
+                }
+                sink.close();
             }
         }
     }
 
-    private static void updateContractPrice(Connection con, int contractId, float totalPrice) {
-        String sql = "update contract set contract_price = ? where id = ?";
-        try (PreparedStatement pst = con.prepareStatement(sql)) {
-            pst.setFloat(1, totalPrice);
-            pst.setInt(2, contractId);
-            pst.executeUpdate();
-        } catch (Exception e) {
-            LOGGER.error("更新合同总价失败，合同ID: {}", contractId, e);
+    /**
+     * 失败时抛出异常, 由调用者回滚整个范围, 不记录检查点
+     */
+    private static void updateContractPrice(RowSink priceSink, int contractId, float totalPrice) throws Exception {
+        if (priceSink == null) {
+            return;
         }
+        priceSink.setFloat(1, totalPrice);
+        priceSink.setInt(2, contractId);
+        priceSink.addRow();
     }
-}
\ No newline at end of file
+}
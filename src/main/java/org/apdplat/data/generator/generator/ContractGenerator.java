@@ -1,7 +1,10 @@
 package org.apdplat.data.generator.generator;
 
 import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.apdplat.data.generator.sink.RowSink;
+import org.apdplat.data.generator.sink.Sinks;
 import org.apdplat.data.generator.utils.Config;
+import org.apdplat.data.generator.utils.RowRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,10 +14,6 @@ import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Created by ysc on 18/04/2018.
@@ -22,95 +21,74 @@ import java.util.concurrent.TimeUnit;
 public class ContractGenerator {
     private static final Logger LOGGER = LoggerFactory.getLogger(ContractGenerator.class);
 
-    private static final List<String> STATES = Arrays.asList("新建", "签订", "生效", "履行中", "终止", "作废");
+    static final List<String> STATES = Arrays.asList("新建", "签订", "生效", "履行中", "终止", "作废");
 
     public static void clear() {
         MySQLUtils.clean("contract");
     }
 
-    public static void generate(int contractCount, List<String> dayStrs, int customerCount, int salesStaffCount, int batchSize) {
-        generate(0, contractCount, dayStrs, customerCount, salesStaffCount, batchSize);
+    /**
+     * @param firstContractId 预先分配的第一个合同id, 第i(从0开始)个合同的id为firstContractId + i
+     */
+    public static void generate(int contractCount, int firstContractId, List<String> dayStrs, int customerCount, int salesStaffCount, int batchSize) {
+        IntDistribution days = Distributions.createForDays("distribution.day", dayStrs);
+        IntDistribution customers = Distributions.create("distribution.customer", customerCount);
+        IntDistribution salesStaffs = Distributions.create("distribution.salesStaff", salesStaffCount);
+        //分片生成时只生成当前分片的一段
+        int[] slice = Shard.slice(0, contractCount);
+        GenerationScheduler.run("contract", slice[0], slice[1], GenerationScheduler.chunkSize(slice[1] - slice[0], batchSize),
+                () -> new InsertTask(firstContractId, dayStrs, days, customers, salesStaffs, batchSize));
     }
 
-    public static void generate(int start, int contractCount, List<String> dayStrs, int customerCount, int salesStaffCount, int batchSize) {
-        int threadCount = 1000;
-        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
-
-        int chunkSize = (contractCount - start) / threadCount;
-        for (int i = 0; i < threadCount; i++) {
-            int threadStart = start + i * chunkSize;
-            int threadEnd = (i == threadCount - 1) ? contractCount : threadStart + chunkSize;
-            executorService.submit(new InsertTask(threadStart, threadEnd, dayStrs, customerCount, salesStaffCount, batchSize));
-        }
-
-        executorService.shutdown();
-        try {
-            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            LOGGER.error("线程池等待中断", e);
-        }
-        LOGGER.info("所有线程插入完成");
-    }
-
-    private static class InsertTask implements Runnable {
-        private final int start;
-        private final int end;
+    private static class InsertTask implements GenerationScheduler.RangeTask {
+        private final int firstContractId;
         private final List<String> dayStrs;
-        private final int customerCount;
-        private final int salesStaffCount;
+        private final IntDistribution days;
+        private final IntDistribution customers;
+        private final IntDistribution salesStaffs;
         private final int batchSize;
-        private final Random random = new Random(System.nanoTime());
+        private final RowRandom random = new RowRandom("contract");
 
-        InsertTask(int start, int end, List<String> dayStrs, int customerCount, int salesStaffCount, int batchSize) {
-            this.start = start;
-            this.end = end;
+        InsertTask(int firstContractId, List<String> dayStrs, IntDistribution days, IntDistribution customers, IntDistribution salesStaffs, int batchSize) {
+            this.firstContractId = firstContractId;
             this.dayStrs = dayStrs;
-            this.customerCount = customerCount;
-            this.salesStaffCount = salesStaffCount;
+            this.days = days;
+            this.customers = customers;
+            this.salesStaffs = salesStaffs;
             this.batchSize = batchSize;
         }
 
         @Override
-        public void run() {
-            Connection con = MySQLUtils.getConnection();
-            if (con == null) {
+        public void run(int start, int end) {
+            RowSink sink = Sinks.open("contract", "id", "contract_price", "state", "sign_day", "sales_staff_id", "customer_id");
+            if (sink == null) {
                 return;
             }
-            PreparedStatement pst = null;
-            ResultSet rs = null;
-            String sql = "insert into contract (contract_price, state, sign_day, sales_staff_id, customer_id) values(?, ?, ?, ?, ?);";
             try {
-                con.setAutoCommit(false);
-                pst = con.prepareStatement(sql);
                 for (int i = start; i < end; i++) {
-                    int salesStaffId = random.nextInt(salesStaffCount) + 1;
-                    int customerId = random.nextInt(customerCount) + 1;
-                    pst.setFloat(1, 0);
-                    pst.setString(2, STATES.get(random.nextInt(STATES.size())));
-                    pst.setString(3, dayStrs.get(random.nextInt(dayStrs.size())));
-                    pst.setInt(4, salesStaffId);
-                    pst.setInt(5, customerId);
-                    pst.addBatch();
+                    random.seek(i);
+                    int salesStaffId = salesStaffs.next(random);
+                    int customerId = customers.next(random);
+                    sink.setInt(1, firstContractId + i);
+                    sink.setFloat(2, 0);
+                    sink.setString(3, STATES.get(random.nextInt(STATES.size())));
+                    sink.setString(4, dayStrs.get(days.next(random) - 1));
+                    sink.setInt(5, salesStaffId);
+                    sink.setInt(6, customerId);
+                    sink.addRow();
 
-                    if ((i + 1) % batchSize == 0) {
-                        pst.executeBatch();
+                    if ((i + 1 - start) % batchSize == 0) {
+                        sink.flush();
                     }
                 }
-                pst.executeBatch();
-                con.commit();
+                Checkpoint.record(sink, "contract", start, end);
+                sink.commit();
                 LOGGER.info("线程 {} 插入完成，范围: {} - {}", Thread.currentThread().getName(), start, end - 1);
             } catch (Exception e) {
-                try {
-                    if (con != null) {
-                        con.rollback();
-                    }
-                } catch (Exception rollbackEx) {
-                    LOGGER.error("线程 {} 回滚失败，范围: {} - {}", Thread.currentThread().getName(), start, end - 1, rollbackEx);
-                }
+                sink.rollback();
                 LOGGER.error("线程 {} 插入失败，范围: {} - {}", Thread.currentThread().getName(), start, end - 1, e);
             } finally {
-                MySQLUtils.close(con, pst, rs);
+                sink.close();
             }
         }
     }
@@ -148,6 +126,7 @@ public class ContractGenerator {
         int customerCount = MySQLUtils.getCount("customer");
         int salesStaffCount = MySQLUtils.getCount("sales_staff");
         int batchSize = Config.getIntValue("batchSize") == -1 ? 1000 : Config.getIntValue("batchSize");
-        ContractGenerator.generate(10000, contractCount, dayStrs, customerCount, salesStaffCount, batchSize);
+        int firstContractId = IdAllocator.reserve("contract", contractCount);
+        ContractGenerator.generate(contractCount, firstContractId, dayStrs, customerCount, salesStaffCount, batchSize);
     }
 }
\ No newline at end of file
@@ -1,18 +1,14 @@
 package org.apdplat.data.generator.generator;
 
 import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.apdplat.data.generator.sink.RowSink;
+import org.apdplat.data.generator.sink.Sinks;
+import org.apdplat.data.generator.utils.RowRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.util.Collection;
 import java.util.List;
-import java.util.Random;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Created by ysc on 18/04/2018.
@@ -29,90 +25,67 @@ public class CustomerGenerator {
     }
 
     public static List<String> generate(int areaCount, int customerCount, int batchSize, Collection<String> exclude) {
-        List<String> names = PeopleNames.getNames(customerCount);
-        int threadCount = 5;
-        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
-
-        int chunkSize = customerCount / threadCount;
-        for (int i = 0; i < threadCount; i++) {
-            int start = i * chunkSize;
-            int end = (i == threadCount - 1) ? customerCount : start + chunkSize;
-            executorService.submit(new InsertTask(areaCount, names, start, end, batchSize));
-        }
+        return generate(areaCount, PeopleNames.getNames("customer", customerCount, exclude), batchSize);
+    }
 
-        executorService.shutdown();
-        try {
-            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            LOGGER.error("线程池等待中断", e);
-        }
+    /**
+     * 为names中的每个人名生成一条记录
+     */
+    public static List<String> generate(int areaCount, List<String> names, int batchSize) {
+        int count = names.size();
+        int firstId = IdAllocator.reserve("customer", count);
+        GenerationScheduler.run("customer", 0, count, GenerationScheduler.chunkSize(count, batchSize),
+                () -> new InsertTask(areaCount, names, firstId, batchSize));
 
         return names;
     }
 
-    static class InsertTask implements Runnable {
+    static class InsertTask implements GenerationScheduler.RangeTask {
         private final int areaCount;
         private final List<String> names;
-        private final int start;
-        private final int end;
+        private final int firstId;
         private final int batchSize;
+        private final RowRandom random = new RowRandom("customer");
 
-        InsertTask(int areaCount, List<String> names, int start, int end, int batchSize) {
+        InsertTask(int areaCount, List<String> names, int firstId, int batchSize) {
             this.areaCount = areaCount;
             this.names = names;
-            this.start = start;
-            this.end = end;
+            this.firstId = firstId;
             this.batchSize = batchSize;
         }
 
         @Override
-        public void run() {
-            Connection con = MySQLUtils.getConnection();
-            if (con == null) {
+        public void run(int start, int end) {
+            RowSink sink = Sinks.open("customer", "id", "name", "gender", "area_id", "age");
+            if (sink == null) {
                 return;
             }
-            PreparedStatement pst = null;
-            ResultSet rs = null;
-            String sql = "insert into customer (name, gender, area_id, age) values(?, ?, ?, ?);";
             try {
-                con.setAutoCommit(false);
-                pst = con.prepareStatement(sql);
-                Random random = new Random(System.nanoTime());
                 for (int i = start; i < end; i++) {
+                    random.seek(i);
                     int r = random.nextInt(names.size());
                     int area_id = random.nextInt(areaCount) + 1;
                     int age = random.nextInt(40) + 18;
                     String gender = r > names.size() / 2 ? "男" : "女";
-                    pst.setString(1, names.get(i));
-                    pst.setString(2, gender);
-                    pst.setInt(3, area_id);
-                    pst.setInt(4, age);
-                    pst.addBatch();
+                    sink.setInt(1, firstId + i);
+                    sink.setString(2, names.get(i));
+                    sink.setString(3, gender);
+                    sink.setInt(4, area_id);
+                    sink.setInt(5, age);
+                    sink.addRow();
 
                     if ((i + 1 - start) % batchSize == 0) {
-                        try {
-                            pst.executeBatch();
-                            // 手动清空批处理命令（部分驱动可能需要）
-                            pst.clearBatch();
-                        } catch (Exception e) {
-                            try {
-                                con.rollback();
-                                pst.clearBatch(); // 异常时也清空批处理命令
-                            } catch (Exception rollbackEx) {
-                                LOGGER.error("线程 {} 回滚失败，范围: {} - {}", Thread.currentThread().getName(), start, end - 1, rollbackEx);
-                            }
-                            LOGGER.error("线程 {} 执行批处理失败，范围: {} - {}", Thread.currentThread().getName(), start, end - 1, e);
-                        }
+                        sink.flush();
                     }
                 }
-                pst.executeBatch();
-                con.commit();
+                Checkpoint.record(sink, "customer", start, end);
+                sink.commit();
                 LOGGER.info("线程 {} 保存到数据库成功", Thread.currentThread().getName());
             } catch (Exception e) {
-                LOGGER.error("线程 {} 保存到数据库失败", Thread.currentThread().getName(), e);
+                sink.rollback();
+                LOGGER.error("线程 {} 保存到数据库失败，范围: {} - {}", Thread.currentThread().getName(), start, end - 1, e);
             } finally {
-                MySQLUtils.close(con, pst, rs);
+                sink.close();
             }
         }
     }
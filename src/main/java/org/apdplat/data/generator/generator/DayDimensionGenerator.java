@@ -1,13 +1,12 @@
 package org.apdplat.data.generator.generator;
 
 import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.apdplat.data.generator.sink.RowSink;
+import org.apdplat.data.generator.sink.Sinks;
 import org.apdplat.data.generator.utils.TimeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -22,42 +21,36 @@ public class DayDimensionGenerator {
 
     public static List<String> generate(int startYear, int startMonth, int startDay, LocalDateTime end, int batchSize) {
         List<String> dayStrs = new ArrayList<>();
-        Connection con = MySQLUtils.getConnection();
-        if (con == null) {
+        RowSink sink = Sinks.open("day_dimension", "day_str", "dayofyear", "dayofweek", "weekofyear", "month", "dayofmonth", "quarter", "year");
+        if (sink == null) {
             return dayStrs;
         }
-        PreparedStatement pst = null;
-        ResultSet rs = null;
         try {
-            con.setAutoCommit(false);
-            String sql = "insert into day_dimension (day_str, dayofyear, dayofweek, weekofyear, month, dayofmonth, quarter, year) values(?, ?, ?, ?, ?, ?, ?, ?);";
-            pst = con.prepareStatement(sql);
             List<Map<String, Object>> dayData = getDayData(startYear, startMonth, startDay, end);
             LOGGER.info("天维度数据条数: {}", dayData.size());
             for (int i = 0; i < dayData.size(); i++) {
                 Map<String, Object> map = dayData.get(i);
                 dayStrs.add(map.get("day_str").toString());
-                pst.setString(1, map.get("day_str").toString());
-                pst.setInt(2, Integer.parseInt(map.get("dayofyear").toString()));
-                pst.setInt(3, Integer.parseInt(map.get("dayofweek").toString()));
-                pst.setInt(4, Integer.parseInt(map.get("weekofyear").toString()));
-                pst.setInt(5, Integer.parseInt(map.get("month").toString()));
-                pst.setInt(6, Integer.parseInt(map.get("dayofmonth").toString()));
-                pst.setInt(7, Integer.parseInt(map.get("quarter").toString()));
-                pst.setInt(8, Integer.parseInt(map.get("year").toString()));
-                pst.addBatch();
+                sink.setString(1, map.get("day_str").toString());
+                sink.setInt(2, Integer.parseInt(map.get("dayofyear").toString()));
+                sink.setInt(3, Integer.parseInt(map.get("dayofweek").toString()));
+                sink.setInt(4, Integer.parseInt(map.get("weekofyear").toString()));
+                sink.setInt(5, Integer.parseInt(map.get("month").toString()));
+                sink.setInt(6, Integer.parseInt(map.get("dayofmonth").toString()));
+                sink.setInt(7, Integer.parseInt(map.get("quarter").toString()));
+                sink.setInt(8, Integer.parseInt(map.get("year").toString()));
+                sink.addRow();
 
                 if ((i + 1) % batchSize == 0) {
-                    pst.executeBatch();
+                    sink.flush();
                 }
             }
-            pst.executeBatch();
-            con.commit();
+            sink.commit();
             LOGGER.info("保存到数据库成功");
         } catch (Exception e) {
             LOGGER.error("保存到数据库失败", e);
         } finally {
-            MySQLUtils.close(con, pst, rs);
+            sink.close();
         }
         return dayStrs;
     }
@@ -0,0 +1,127 @@
+package org.apdplat.data.generator.generator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 从[1, n]中不放回地抽取k个不同的整数, 用于为每个合同选择不重复的商品
+ * 等概率抽样使用Floyd算法, 只需要k次随机数, 和n的大小无关, k接近n时也不会退化
+ * 已选集合是基本类型的开放寻址哈希表, 用版本号清空, 每行不分配任何对象
+ * 非线程安全, 每个线程使用自己的实例
+ */
+public class DistinctSampler {
+    // 按权重抽样时, 每个位置最多重抽的次数, 超过后用等概率抽样补足
+    private static final int MAX_WEIGHTED_ATTEMPTS = 16;
+
+    private int[] keys;
+    private int[] versions;
+    private int mask;
+    // 乘法哈希取高位时右移的位数, 32 - log2(容量)
+    private int shift;
+    private int version;
+
+    public DistinctSampler(int maxK) {
+        resize(maxK);
+    }
+
+    private void resize(int maxK) {
+        // 装载因子不超过0.5
+        int capacity = Integer.highestOneBit(Math.max(4, maxK) * 2 - 1) << 1;
+        keys = new int[capacity];
+        versions = new int[capacity];
+        mask = capacity - 1;
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        version = 0;
+    }
+
+    /**
+     * 等概率地抽取k个[1, n]之间的不同整数, 按随机顺序写入out, 返回实际抽取的个数min(k, n)
+     */
+    public int sample(int n, int k, Random random, int[] out) {
+        k = Math.min(k, n);
+        clear(k);
+        // Floyd算法: 依次处理j = n - k + 1 .. n, 在[1, j]中随机选t, t已被选中时改选j
+        for (int i = 0, j = n - k + 1; j <= n; i++, j++) {
+            int t = random.nextInt(j) + 1;
+            if (!add(t)) {
+                // j大于之前选中的所有数, 一定不在集合中
+                t = j;
+                add(j);
+            }
+            out[i] = t;
+        }
+        shuffle(out, k, random);
+        return k;
+    }
+
+    /**
+     * 按分布抽取k个不同的整数, 重复时重抽, 某个位置重抽次数过多时用等概率抽样补足
+     */
+    public int sample(IntDistribution distribution, int k, Random random, int[] out) {
+        int n = distribution.size();
+        if (distribution.isUniform()) {
+            return sample(n, k, random, out);
+        }
+        k = Math.min(k, n);
+        clear(k);
+        int count = 0;
+        while (count < k) {
+            int value = 0;
+            for (int attempt = 0; attempt < MAX_WEIGHTED_ATTEMPTS; attempt++) {
+                int candidate = distribution.next(random);
+                if (add(candidate)) {
+                    value = candidate;
+                    break;
+                }
+            }
+            if (value == 0) {
+                // 从随机位置开始顺序查找第一个未被选中的整数
+                int candidate = random.nextInt(n) + 1;
+                while (!add(candidate)) {
+                    candidate = candidate == n ? 1 : candidate + 1;
+                }
+                value = candidate;
+            }
+            out[count++] = value;
+        }
+        return k;
+    }
+
+    private void clear(int k) {
+        if (k * 2 > keys.length) {
+            resize(k);
+        }
+        version++;
+        if (version == 0) {
+            // 版本号溢出后重置
+            Arrays.fill(versions, 0);
+            version = 1;
+        }
+    }
+
+    /**
+     * 加入集合, 已经存在时返回false
+     */
+    private boolean add(int key) {
+        // 乘法哈希的高位混合得最充分, 连续或者等间隔的id也能均匀分散
+        int slot = (key * 0x9E3779B9) >>> shift;
+        while (versions[slot] == version) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        versions[slot] = version;
+        keys[slot] = key;
+        return true;
+    }
+
+    private static void shuffle(int[] values, int count, Random random) {
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.apdplat.data.generator.generator;
+
+import org.apdplat.data.generator.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 根据配置创建外键及签订日期的分布, 除了等概率分布, 其它分布都预先计算成别名表, 每次抽样O(1)
+ * 配置格式为 名称:参数, 支持:
+ * uniform                  等概率, 默认值
+ * zipf:s                   第i个的权重为1/i^s, 编号越小越热门
+ * powerlaw:alpha           幂律(帕累托)分布离散化, 第i个的概率为i^-alpha - (i+1)^-alpha
+ * normal:mean,stddev       正态分布, mean和stddev是相对于总数的比例, 比如normal:0.5,0.1
+ * histogram:w1,w2,...      经验直方图, 把[1, size]平均分成若干段, 每段内等概率
+ * monthly:w1,...,w12       只用于签订日期, 按月份加权, 模拟季节性高峰
+ * weekly:w1,...,w7         只用于签订日期, 按星期一到星期日加权
+ */
+public class Distributions {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Distributions.class);
+
+    /**
+     * 从配置项key读取分布, 没有配置时使用等概率分布
+     */
+    public static IntDistribution create(String key, int size) {
+        String spec = Config.getStringValue(key, "uniform");
+        IntDistribution distribution = create(spec, size, null);
+        LOGGER.info("{} 使用的分布: {}, 取值范围: 1 - {}", key, spec, size);
+        return distribution;
+    }
+
+    /**
+     * 签订日期的分布, 第i个整数对应dayStrs.get(i - 1), 额外支持monthly和weekly
+     */
+    public static IntDistribution createForDays(String key, List<String> dayStrs) {
+        String spec = Config.getStringValue(key, "uniform");
+        IntDistribution distribution = create(spec, dayStrs.size(), dayStrs);
+        LOGGER.info("{} 使用的分布: {}, 天数: {}", key, spec, dayStrs.size());
+        return distribution;
+    }
+
+    private static IntDistribution create(String spec, int size, List<String> dayStrs) {
+        String name = spec.trim();
+        double[] params = new double[0];
+        int index = name.indexOf(':');
+        if (index > -1) {
+            params = parseParams(name.substring(index + 1));
+            name = name.substring(0, index).trim();
+        }
+        switch (name.toLowerCase()) {
+            case "uniform":
+                return IntDistribution.uniform(size);
+            case "zipf":
+                return new AliasTable(zipf(size, param(params, 0, 1.0)));
+            case "powerlaw":
+                return new AliasTable(powerLaw(size, param(params, 0, 1.0)));
+            case "normal":
+                return new AliasTable(normal(size, param(params, 0, 0.5), param(params, 1, 0.15)));
+            case "histogram":
+                return new AliasTable(histogram(size, params));
+            case "monthly":
+                return new AliasTable(byDate(dayStrs, spec, params, 12));
+            case "weekly":
+                return new AliasTable(byDate(dayStrs, spec, params, 7));
+            default:
+                throw new IllegalArgumentException("不支持的分布: " + spec);
+        }
+    }
+
+    private static double[] parseParams(String text) {
+        String[] attrs = text.split(",");
+        double[] params = new double[attrs.length];
+        for (int i = 0; i < attrs.length; i++) {
+            params[i] = Double.parseDouble(attrs[i].trim());
+        }
+        return params;
+    }
+
+    private static double param(double[] params, int index, double defaultValue) {
+        return index < params.length ? params[index] : defaultValue;
+    }
+
+    private static double[] zipf(int size, double s) {
+        double[] weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            weights[i] = 1 / Math.pow(i + 1, s);
+        }
+        return weights;
+    }
+
+    private static double[] powerLaw(int size, double alpha) {
+        if (alpha <= 0) {
+            throw new IllegalArgumentException("powerlaw的alpha必须大于0: " + alpha);
+        }
+        double[] weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            weights[i] = Math.pow(i + 1, -alpha) - Math.pow(i + 2, -alpha);
+        }
+        return weights;
+    }
+
+    private static double[] normal(int size, double mean, double stddev) {
+        if (stddev <= 0) {
+            throw new IllegalArgumentException("normal的stddev必须大于0: " + stddev);
+        }
+        double center = mean * size;
+        double sigma = stddev * size;
+        double[] weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            double z = (i + 0.5 - center) / sigma;
+            weights[i] = Math.exp(-0.5 * z * z);
+        }
+        return weights;
+    }
+
+    private static double[] histogram(int size, double[] buckets) {
+        if (buckets.length == 0) {
+            throw new IllegalArgumentException("histogram至少需要一个权重");
+        }
+        int[] counts = new int[buckets.length];
+        for (int i = 0; i < size; i++) {
+            counts[(int) ((long) i * buckets.length / size)]++;
+        }
+        double[] weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            int bucket = (int) ((long) i * buckets.length / size);
+            weights[i] = buckets[bucket] / counts[bucket];
+        }
+        return weights;
+    }
+
+    private static double[] byDate(List<String> dayStrs, String spec, double[] params, int length) {
+        if (dayStrs == null) {
+            throw new IllegalArgumentException("分布只能用于签订日期: " + spec);
+        }
+        if (params.length != length) {
+            throw new IllegalArgumentException("分布需要" + length + "个权重: " + spec);
+        }
+        double[] weights = new double[dayStrs.size()];
+        for (int i = 0; i < weights.length; i++) {
+            // 日期格式为 yyyy-MM-dd HH:mm:ss
+            LocalDate date = LocalDate.parse(dayStrs.get(i).substring(0, 10));
+            weights[i] = length == 12 ? params[date.getMonthValue() - 1] : params[date.getDayOfWeek().getValue() - 1];
+        }
+        return weights;
+    }
+}
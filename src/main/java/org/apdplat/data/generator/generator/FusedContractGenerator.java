@@ -0,0 +1,143 @@
+package org.apdplat.data.generator.generator;
+
+import org.apdplat.data.generator.sink.RowSink;
+import org.apdplat.data.generator.sink.Sinks;
+import org.apdplat.data.generator.utils.RowRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * 在内存中同时生成合同及其明细, 合同写入时就带上最终的总价
+ * 不再需要ContractDetailGenerator为每个合同执行一次update
+ */
+public class FusedContractGenerator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FusedContractGenerator.class);
+
+    /**
+     * @param firstContractId 预先分配的第一个合同id, 第j(从1开始)个合同的id为firstContractId + j - 1
+     * @param firstDetailId 预先分配的第一个合同明细id, 每个合同预留contractDetailLimit个明细id
+     * @param itemPrices 商品价格表, 下标为商品id
+     */
+    public static void generate(int contractCount, int firstContractId, int firstDetailId, int contractDetailLimit, int itemQuantityLimit, float[] itemPrices,
+                                List<String> dayStrs, int customerCount, int salesStaffCount, int batchSize) {
+        IntDistribution items = Distributions.create("distribution.item", itemPrices.length - 1);
+        IntDistribution days = Distributions.createForDays("distribution.day", dayStrs);
+        IntDistribution customers = Distributions.create("distribution.customer", customerCount);
+        IntDistribution salesStaffs = Distributions.create("distribution.salesStaff", salesStaffCount);
+        //分片生成时只生成当前分片的一段
+        int[] slice = Shard.slice(1, contractCount + 1);
+        GenerationScheduler.run("contract+detail", slice[0], slice[1], GenerationScheduler.chunkSize(slice[1] - slice[0], batchSize),
+                () -> new InsertTask(firstContractId, firstDetailId, contractDetailLimit, itemQuantityLimit, itemPrices, items, dayStrs, days, customers, salesStaffs, batchSize));
+    }
+
+    private static class InsertTask implements GenerationScheduler.RangeTask {
+        private final int firstContractId;
+        private final int firstDetailId;
+        private final int contractDetailLimit;
+        private final int itemQuantityLimit;
+        private final float[] itemPrices;
+        private final IntDistribution items;
+        private final List<String> dayStrs;
+        private final IntDistribution days;
+        private final IntDistribution customers;
+        private final IntDistribution salesStaffs;
+        private final int batchSize;
+        private final RowRandom random = new RowRandom("contract");
+        private final DistinctSampler sampler;
+        // 当前合同的明细, 写合同之前先在内存中算出总价
+        private final int[] itemIds;
+        private final int[] itemQuantities;
+        private final float[] detailPrices;
+
+        InsertTask(int firstContractId, int firstDetailId, int contractDetailLimit, int itemQuantityLimit, float[] itemPrices, IntDistribution items,
+                   List<String> dayStrs, IntDistribution days, IntDistribution customers, IntDistribution salesStaffs, int batchSize) {
+            this.firstContractId = firstContractId;
+            this.firstDetailId = firstDetailId;
+            this.contractDetailLimit = contractDetailLimit;
+            this.itemQuantityLimit = itemQuantityLimit;
+            this.itemPrices = itemPrices;
+            this.items = items;
+            this.dayStrs = dayStrs;
+            this.days = days;
+            this.customers = customers;
+            this.salesStaffs = salesStaffs;
+            this.batchSize = batchSize;
+            this.sampler = new DistinctSampler(contractDetailLimit);
+            this.itemIds = new int[contractDetailLimit];
+            this.itemQuantities = new int[contractDetailLimit];
+            this.detailPrices = new float[contractDetailLimit];
+        }
+
+        @Override
+        public void run(int start, int end) {
+            RowSink contractSink = Sinks.open("contract", "id", "contract_price", "state", "sign_day", "sales_staff_id", "customer_id");
+            if (contractSink == null) {
+                return;
+            }
+            // 明细和合同共用一个事务, 先写合同再写明细, 保证外键有效
+            RowSink detailSink = Sinks.open(contractSink, "contract_detail", "id", "item_id", "item_quantity", "detail_price", "contract_id", "sign_day");
+            if (detailSink == null) {
+                contractSink.close();
+                return;
+            }
+            try {
+                for (int j = start; j < end; j++) {
+                    int contractId = firstContractId + j - 1;
+                    int detailId = firstDetailId + (j - 1) * contractDetailLimit;
+                    random.seek(j - 1);
+                    int salesStaffId = salesStaffs.next(random);
+                    int customerId = customers.next(random);
+                    String state = ContractGenerator.STATES.get(random.nextInt(ContractGenerator.STATES.size()));
+                    String dayStr = dayStrs.get(days.next(random) - 1);
+
+                    float totalPrice = 0;
+                    int len = sampler.sample(items, random.nextInt(contractDetailLimit) + 1, random, itemIds);
+                    for (int i = 0; i < len; i++) {
+                        int itemId = itemIds[i];
+                        int itemQuantity = random.nextInt(itemQuantityLimit) + 1;
+                        float detailPrice = itemPrices[itemId] * itemQuantity;
+                        totalPrice += detailPrice;
+                        itemQuantities[i] = itemQuantity;
+                        detailPrices[i] = detailPrice;
+                    }
+
+                    contractSink.setInt(1, contractId);
+                    contractSink.setFloat(2, totalPrice);
+                    contractSink.setString(3, state);
+                    contractSink.setString(4, dayStr);
+                    contractSink.setInt(5, salesStaffId);
+                    contractSink.setInt(6, customerId);
+                    contractSink.addRow();
+
+                    for (int i = 0; i < len; i++) {
+                        detailSink.setInt(1, detailId + i);
+                        detailSink.setInt(2, itemIds[i]);
+                        detailSink.setInt(3, itemQuantities[i]);
+                        detailSink.setFloat(4, detailPrices[i]);
+                        detailSink.setInt(5, contractId);
+                        detailSink.setString(6, dayStr);
+                        detailSink.addRow();
+                    }
+
+                    if ((j - start + 1) % batchSize == 0) {
+                        contractSink.flush();
+                        detailSink.flush();
+                    }
+                }
+                contractSink.flush();
+                Checkpoint.record(detailSink, "contract+detail", start, end);
+                detailSink.commit();
+                LOGGER.info("线程 {} 插入完成，范围: {} - {}", Thread.currentThread().getName(), start, end - 1);
+            } catch (Exception e) {
+                detailSink.rollback();
+                contractSink.rollback();
+                LOGGER.error("线程 {} 插入失败，范围: {} - {}", Thread.currentThread().getName(), start, end - 1, e);
+            } finally {
+                detailSink.close();
+                contractSink.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.apdplat.data.generator.generator;
+
+import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.apdplat.data.generator.sink.Sinks;
+import org.apdplat.data.generator.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 所有批量生成器共享的调度器
+ * 工作线程数按连接池大小和cpu核数确定, 多出来的线程只会阻塞在连接池上
+ * 要生成的范围切成小块, 空闲的工作线程从共享游标上领取下一块, 快的线程多做, 慢的线程少做
+ * 启用断点续传时, 块中上次运行已经完成的部分会被跳过, 见Checkpoint
+ */
+public class GenerationScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GenerationScheduler.class);
+    // 每个工作线程平均至少能领到的块数, 块越多负载越均衡
+    private static final int CHUNKS_PER_WORKER = 8;
+
+    private static final int WORKER_COUNT = initWorkerCount();
+
+    /**
+     * 每个工作线程持有一个RangeTask, 依次处理领取到的范围[start, end)
+     */
+    public interface RangeTask {
+        void run(int start, int end);
+    }
+
+    private static int initWorkerCount() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int defaultCount = Sinks.isMySQL() ? Math.min(MySQLUtils.MAX_CONNECTIONS, cores * 2) : cores;
+        int workerCount = Config.getIntValue("generator.workers", defaultCount);
+        if (Sinks.isMySQL() && workerCount > MySQLUtils.MAX_CONNECTIONS) {
+            LOGGER.warn("generator.workers={} 超过连接池大小 {}, 使用 {}", workerCount, MySQLUtils.MAX_CONNECTIONS, MySQLUtils.MAX_CONNECTIONS);
+            workerCount = MySQLUtils.MAX_CONNECTIONS;
+        }
+        return Math.max(1, workerCount);
+    }
+
+    public static int getWorkerCount() {
+        return WORKER_COUNT;
+    }
+
+    /**
+     * 块大小不超过maxChunkSize, 同时保证每个工作线程平均能领到CHUNKS_PER_WORKER块
+     */
+    public static int chunkSize(int total, int maxChunkSize) {
+        int chunks = WORKER_COUNT * CHUNKS_PER_WORKER;
+        return Math.max(1, Math.min(maxChunkSize, (total + chunks - 1) / chunks));
+    }
+
+    /**
+     * 并行处理范围[start, end), 所有块处理完成后返回
+     */
+    public static void run(String name, int start, int end, int chunkSize, Supplier<RangeTask> taskFactory) {
+        if (start >= end) {
+            return;
+        }
+        int size = Math.max(1, chunkSize);
+        int workerCount = (int) Math.min(WORKER_COUNT, ((long) end - start + size - 1) / size);
+        AtomicInteger cursor = new AtomicInteger(start);
+        Checkpoint.Progress progress = Checkpoint.load(name);
+        LOGGER.info("{} 开始生成, 范围: {} - {}, 工作线程数: {}, 块大小: {}", name, start, end - 1, workerCount, size);
+
+        List<Thread> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(() -> {
+                RangeTask task = taskFactory.get();
+                while (true) {
+                    int chunkStart = cursor.getAndAdd(size);
+                    // 领取之前已经超过end, 同时防止游标溢出后变成负数
+                    if (chunkStart >= end || chunkStart < start) {
+                        break;
+                    }
+                    int chunkEnd = (int) Math.min(end, (long) chunkStart + size);
+                    if (progress == null) {
+                        runChunk(name, task, chunkStart, chunkEnd);
+                        continue;
+                    }
+                    for (int[] range : progress.remaining(chunkStart, chunkEnd)) {
+                        runChunk(name, task, range[0], range[1]);
+                    }
+                }
+            }, name + "-worker-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("等待工作线程中断", e);
+        }
+        if (progress != null) {
+            progress.verify(start, end);
+        }
+        LOGGER.info("{} 所有块处理完成", name);
+    }
+
+    private static void runChunk(String name, RangeTask task, int start, int end) {
+        try {
+            task.run(start, end);
+        } catch (RuntimeException e) {
+            LOGGER.error("{} 处理失败，范围: {} - {}", name, start, end - 1, e);
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package org.apdplat.data.generator.generator;
 
+import org.apdplat.data.generator.mysql.BulkLoad;
+import org.apdplat.data.generator.mysql.Schema;
+import org.apdplat.data.generator.sink.Sinks;
 import org.apdplat.data.generator.utils.Config;
 import org.apdplat.data.generator.utils.TimeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Created by ysc on 18/04/2018.
@@ -15,18 +20,44 @@ import java.util.Map;
 public class Generator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Generator.class);
+    // 生成的所有表, 父表在前
+    private static final String[] TABLES = {"area", "day_dimension", "customer", "sales_staff", "category", "brand", "item", "contract", "contract_detail"};
+    // 不分块生成的小表, 继续上次的运行时如果没有写完则清空后重新生成, 只由0号分片写出
+    private static final List<String> DIMENSION_TABLES = Arrays.asList("item", "brand", "category", "day_dimension", "area");
+    // 影响生成结果的配置, 和上次相同时才能继续上次的运行
+    private static final List<String> PARAMS = Arrays.asList("generator.seed", "startYear", "startMonth", "startDay", "customerCount", "salesStaffCount",
+            "contractCount", "contract.mode", "generator.shardCount", "itemCount", "priceLimit", "contractDetailLimit", "itemQuantityLimit");
 
     public static void run() {
-        ////清除数据
-        ContractDetailGenerator.clear();
-        ContractGenerator.clear();
-        CustomerGenerator.clear();
-        SalesStaffGenerator.clear();
-        AreaGenerator.clear();
-        DayDimensionGenerator.clear();
-        ItemGenerator.clear();
-        CategoryGenerator.clear();
-        BrandGenerator.clear();
+        LOGGER.info("数据输出方式: {}", Sinks.getType());
+        if (Shard.isSharded() && !Checkpoint.isEnabled()) {
+            throw new IllegalStateException("分片生成需要写MySQL并启用generator.checkpoint");
+        }
+        //清空数据、维度表、重建索引只由0号分片负责
+        boolean bulkLoad = Shard.isFirst() && Sinks.isMySQL() && BulkLoad.isEnabled();
+        boolean writeDimensions;
+        if (Shard.isFirst()) {
+            boolean resume = Checkpoint.start(getParams());
+            writeDimensions = !Checkpoint.isDimensionsReady();
+            ////清除数据
+            if (!resume) {
+                if (Sinks.isMySQL()) {
+                    Schema.reset(TABLES);
+                }
+            } else if (writeDimensions) {
+                Schema.truncate(DIMENSION_TABLES);
+            }
+            if (bulkLoad) {
+                BulkLoad.disable(TABLES);
+            }
+        } else {
+            Checkpoint.join(getParams());
+            writeDimensions = false;
+        }
+        if (!writeDimensions) {
+            //维度表已经写好, 仍然计算合同需要的区域数、日期、商品价格等
+            Sinks.skip(DIMENSION_TABLES);
+        }
 
         long start = System.currentTimeMillis();
         int batchSize = Config.getIntValue("batchSize") == -1 ? 1000 : Config.getIntValue("batchSize");
@@ -37,16 +68,20 @@ public class Generator {
 
         //区域数
         int areaCount = AreaGenerator.generate();
-        LocalDateTime end = LocalDateTime.now();
+        //继续上次的运行时日期范围不变
+        LocalDateTime end = LocalDateTime.parse(Checkpoint.getValue("end", () -> LocalDateTime.now().toString()));
         List<String> dayStrs = DayDimensionGenerator.generate(startYear, startMonth, startDay, end, batchSize);
         //客户数
         int customerCount = Config.getIntValue("customerCount") == -1 ? 5000 : Config.getIntValue("customerCount");
         //销售数
         int salesStaffCount = Config.getIntValue("salesStaffCount") == -1 ? 2000 : Config.getIntValue("salesStaffCount");
-        List<String> customers = CustomerGenerator.generate(areaCount, customerCount, batchSize);
-        SalesStaffGenerator.generate(areaCount, salesStaffCount, batchSize, customers);
+        //客户和销售的人名取自同一个排列的前后两段, 不会重名
+        List<String> names = PeopleNames.getNames(customerCount + salesStaffCount);
+        if (writeDimensions) {
+            CustomerGenerator.generate(areaCount, names.subList(0, customerCount), batchSize);
+            SalesStaffGenerator.generate(areaCount, names.subList(customerCount, customerCount + salesStaffCount), batchSize);
+        }
         PeopleNames.clear();
-        customers.clear();
         //合同数
         int contractCount = Config.getIntValue("contractCount") == -1 ? 20000 : Config.getIntValue("contractCount");
         //商品数
@@ -57,17 +92,61 @@ public class Generator {
         int categoryCount = CategoryGenerator.generate(batchSize);
         //商品品牌数
         int brandCount = BrandGenerator.generate(batchSize);
-        Map<Integer, Float> items = ItemGenerator.generate(itemCount, batchSize, priceLimit, categoryCount, brandCount);
-        ContractGenerator.generate(contractCount, dayStrs, customerCount, salesStaffCount, batchSize);
+        //商品价格表, 下标为商品id, 所有线程只读共享
+        float[] itemPrices = ItemGenerator.generate(itemCount, batchSize, priceLimit, categoryCount, brandCount);
         //合同最大明细数
         int contractDetailLimit = Config.getIntValue("contractDetailLimit") == -1 ? 100 : Config.getIntValue("contractDetailLimit");
         //合同明细商品最大数量
         int itemQuantityLimit = Config.getIntValue("itemQuantityLimit") == -1 ? 100 : Config.getIntValue("itemQuantityLimit");
-        //合同明细
-        ContractDetailGenerator.generate(contractCount, contractDetailLimit, itemQuantityLimit, items, dayStrs, batchSize);
+        //预先分配合同及合同明细的id
+        int firstContractId = IdAllocator.reserve("contract", contractCount);
+        //每个合同预留contractDetailLimit个明细id, 明细id只和合同的序号有关, 不依赖线程的执行顺序
+        //平均每个合同只用到一半左右, 明细id是稀疏的, 预留的总数受int范围限制
+        long detailIdCount = (long) contractCount * contractDetailLimit;
+        if (detailIdCount > Integer.MAX_VALUE) {
+            throw new IllegalStateException("合同数(contractCount: " + contractCount + ") 乘以合同最大明细数(contractDetailLimit: " + contractDetailLimit
+                    + ") 为 " + detailIdCount + ", 超出了明细id(int)的范围 " + Integer.MAX_VALUE + ", 请减小contractCount或者contractDetailLimit");
+        }
+        int firstDetailId = IdAllocator.reserve("contract_detail", (int) detailIdCount);
+        if (Shard.isFirst()) {
+            //其它分片开始生成各自的合同
+            Checkpoint.markDimensionsReady();
+        }
+        //合同生成方式
+        String contractMode = Config.getStringValue("contract.mode", "fused");
+        LOGGER.info("合同生成方式: {}", contractMode);
+        if ("separate".equals(contractMode)) {
+            ContractGenerator.generate(contractCount, firstContractId, dayStrs, customerCount, salesStaffCount, batchSize);
+            //合同明细
+            ContractDetailGenerator.generate(contractCount, firstContractId, firstDetailId, contractDetailLimit, itemQuantityLimit, itemPrices, dayStrs, batchSize);
+        } else {
+            //合同及合同明细
+            FusedContractGenerator.generate(contractCount, firstContractId, firstDetailId, contractDetailLimit, itemQuantityLimit, itemPrices, dayStrs, customerCount, salesStaffCount, batchSize);
+        }
         dayStrs.clear();
-        items.clear();
+        Sinks.finish();
+        Sinks.report(System.currentTimeMillis() - start);
         LOGGER.info("数据生成耗时: {}", TimeUtils.getTimeDes(System.currentTimeMillis() - start));
+        boolean done = Checkpoint.done();
+        if (!Shard.isFirst()) {
+            return;
+        }
+        //等所有分片都写完再重建索引
+        boolean allDone = done && Checkpoint.awaitShards();
+        if (bulkLoad) {
+            long restoreStart = System.currentTimeMillis();
+            BulkLoad.restore(TABLES);
+            LOGGER.info("批量导入: 重建索引及外键总耗时: {}", TimeUtils.getTimeDes(System.currentTimeMillis() - restoreStart));
+        }
+        if (allDone) {
+            Checkpoint.finish();
+        }
+    }
+
+    private static String getParams() {
+        Map<String, String> params = new TreeMap<>(Config.getValues("distribution."));
+        PARAMS.forEach(key -> params.put(key, Config.getStringValue(key, "")));
+        return params.toString();
     }
 
     public static void main(String[] args) {
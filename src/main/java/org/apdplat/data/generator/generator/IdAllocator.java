@@ -0,0 +1,77 @@
+package org.apdplat.data.generator.generator;
+
+import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.apdplat.data.generator.sink.Sinks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在客户端预先分配主键, 代替AUTO_INCREMENT加getGeneratedKeys
+ * 写MySQL时每次预留一块id都在服务器端原子地完成(MySQLUtils.reserveIds), 多个实时生成进程以及批量生成同时运行也不会重叠
+ * 不写MySQL时在本进程内从1开始分配
+ * 显式写入的id大于AUTO_INCREMENT计数器时, InnoDB会自动把计数器推到其后面
+ */
+public class IdAllocator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdAllocator.class);
+
+    private final String table;
+    // 不写MySQL时使用
+    private final AtomicLong next = new AtomicLong(1);
+
+    private IdAllocator(String table) {
+        this.table = table;
+    }
+
+    public static IdAllocator create(String table) {
+        return new IdAllocator(table);
+    }
+
+    /**
+     * 批量生成时一次预留count个连续的id, 返回第一个, 继续上次的运行或者分片生成时使用保存的值, 不再重新预留
+     */
+    public static int reserve(String table, int count) {
+        int firstId = Integer.parseInt(Checkpoint.getValue("firstId." + table, () -> Integer.toString(create(table).allocate(count))));
+        LOGGER.info("表 {} 的id从 {} 开始分配, 数量: {}", table, firstId, count);
+        return firstId;
+    }
+
+    /**
+     * 预留count个连续的id, 返回第一个, 失败时抛出IllegalStateException
+     */
+    public int allocate(int count) {
+        long first = Sinks.isMySQL() ? MySQLUtils.reserveIds(table, count) : next.getAndAdd(count);
+        if (first + count - 1 > Integer.MAX_VALUE) {
+            throw new IllegalStateException("表 " + table + " 的id超出int范围");
+        }
+        return (int) first;
+    }
+
+    /**
+     * 创建一个线程私有的id块, 用完后自动再预留blockSize个
+     */
+    public IdBlock newBlock(int blockSize) {
+        return new IdBlock(this, blockSize);
+    }
+
+    public static class IdBlock {
+        private final IdAllocator allocator;
+        private final int blockSize;
+        private int next;
+        private int end;
+
+        private IdBlock(IdAllocator allocator, int blockSize) {
+            this.allocator = allocator;
+            this.blockSize = blockSize;
+        }
+
+        public int nextId() {
+            if (next == end) {
+                next = allocator.allocate(blockSize);
+                end = next + blockSize;
+            }
+            return next++;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.apdplat.data.generator.generator;
+
+import java.util.Random;
+
+/**
+ * [1, size]上的整数分布, 用于按权重选择商品、客户等
+ */
+public interface IntDistribution {
+    int size();
+
+    /**
+     * 按分布抽取一个[1, size]之间的整数
+     */
+    int next(Random random);
+
+    /**
+     * 等概率分布可以直接使用更快的算法, 比如不放回抽样时使用Floyd算法
+     */
+    default boolean isUniform() {
+        return false;
+    }
+
+    static IntDistribution uniform(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size必须大于0: " + size);
+        }
+        return new IntDistribution() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public int next(Random random) {
+                return random.nextInt(size) + 1;
+            }
+
+            @Override
+            public boolean isUniform() {
+                return true;
+            }
+        };
+    }
+}
@@ -1,17 +1,14 @@
 package org.apdplat.data.generator.generator;
 
 import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.apdplat.data.generator.sink.RowSink;
+import org.apdplat.data.generator.sink.Sinks;
 import org.apdplat.data.generator.utils.MultiResourcesUtils;
+import org.apdplat.data.generator.utils.RowRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Random;
 
 /**
  * Created by ysc on 18/04/2018.
@@ -25,48 +22,46 @@ public class ItemGenerator {
         MySQLUtils.clean("item");
     }
 
-    public static Map<Integer, Float> generate(int itemCount, int batchSize, int priceLimit, int categoryCount, int brandCount) {
-        Map<Integer, Float> map = new HashMap<>();
-        Connection con = MySQLUtils.getConnection();
-        if (con == null) {
-            return map;
+    /**
+     * @return 商品价格表, 下标为商品id, 长度为itemCount + 1, 下标0不使用
+     */
+    public static float[] generate(int itemCount, int batchSize, int priceLimit, int categoryCount, int brandCount) {
+        float[] prices = new float[itemCount + 1];
+        RowSink sink = Sinks.open("item", "id", "name", "price", "category_id", "brand_id", "discount", "color");
+        if (sink == null) {
+            return new float[1];
         }
-        PreparedStatement pst = null;
-        ResultSet rs = null;
-        String sql = "insert into item (id, name, price, category_id, brand_id, discount, color) values(?, ?, ?, ?, ?, ?, ?);";
-        Random random = new Random(System.nanoTime());
+        RowRandom random = new RowRandom("item");
         try {
-            con.setAutoCommit(false);
-            pst = con.prepareStatement(sql);
             for (int i = 0; i < itemCount; i++) {
+                random.seek(i);
                 int category_id = random.nextInt(categoryCount) + 1;
                 int brand_id = random.nextInt(brandCount) + 1;
                 double discount = (random.nextInt(5) + 5) / 10.0;
                 int color_index = random.nextInt(COLORS.size());
                 String color = COLORS.get(color_index);
                 float price = Float.parseFloat(random.nextInt(priceLimit) + 1 + "." + random.nextInt(10) + random.nextInt(10));
-                pst.setInt(1, i + 1);
-                pst.setString(2, "商品" + (i + 1));
-                pst.setFloat(3, price);
-                pst.setInt(4, category_id);
-                pst.setInt(5, brand_id);
-                pst.setFloat(6, (float) discount);
-                pst.setString(7, color);
-                pst.addBatch();
-                map.put(i + 1, price);
+                sink.setInt(1, i + 1);
+                sink.setString(2, "商品" + (i + 1));
+                sink.setFloat(3, price);
+                sink.setInt(4, category_id);
+                sink.setInt(5, brand_id);
+                sink.setFloat(6, (float) discount);
+                sink.setString(7, color);
+                sink.addRow();
+                prices[i + 1] = price;
                 if ((i + 1) % batchSize == 0) {
-                    pst.executeBatch();
+                    sink.flush();
                 }
             }
-            pst.executeBatch();
-            con.commit();
+            sink.commit();
             LOGGER.info("保存到数据库成功");
         } catch (Exception e) {
             LOGGER.error("保存到数据库失败", e);
         } finally {
-            MySQLUtils.close(con, pst, rs);
+            sink.close();
         }
-        return map;
+        return prices;
     }
 
     public static void main(String[] args) {
@@ -1,26 +1,39 @@
 package org.apdplat.data.generator.generator;
 
 import org.apdplat.data.generator.utils.MultiResourcesUtils;
+import org.apdplat.data.generator.utils.RowRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Created by ysc on 18/04/2018.
+ *
+ * 人名选择:
+ * 人数不超过人名词典大小时, 从词典中选择
+ * 超过时, 用姓氏 × 名字组合出更多的人名, 内置的常用字可以组合出一千多万个, 姓氏和名字来自词典及内置的常用字
+ * 两种情况都用带种子的伪随机排列(Feistel网络)把序号映射到人名, 第i个人名按需计算, 选择k个人名只需要O(k)
  */
 public class PeopleNames {
     private static final Logger LOGGER = LoggerFactory.getLogger(PeopleNames.class);
     private static List<String> NAMES = new ArrayList<>();
 
+    private static final String COMMON_SURNAMES = "王李张刘陈杨黄赵吴周徐孙马朱胡郭何高林罗郑梁谢宋唐许韩冯邓曹彭曾肖田董袁潘于蒋蔡余杜叶程苏魏吕丁任沈姚卢姜崔钟谭陆汪范金石廖贾夏韦付方白邹孟熊秦邱江尹薛闫段雷侯龙史陶黎贺顾毛郝龚邵万钱严覃武戴莫孔向汤常温康施文牛樊葛邢安齐易乔伍庞颜倪庄聂章鲁岳翟殷詹申欧耿关兰焦俞左柳甘祝包宁尚符舒阮柯纪梅童凌毕单季裴霍涂成苗谷盛曲翁冉骆蓝路游辛靳管柴蒙鲍华喻祁蒲房滕屈饶解牟艾尤阳时穆农司卓古吉缪简车项连芦麦褚娄窦戚岑景党宫费卜冷晏席卫米柏宗瞿桂全佟应臧闵苟邬边卞姬师和仇栾隋商刁沙荣巫寇桑郎甄丛仲虞敖巩明佘池查麻苑迟邝";
+    private static final String COMMON_GIVEN_CHARS = "伟芳娜秀英敏静丽强磊军洋勇艳杰娟涛明超兰霞平刚桂华玉萍红娥玲芬燕彬鹏辉鑫宇浩然子轩梓涵欣怡思雨晨博文睿嘉诚佳琪梦瑶雪婷晓东海波峰斌俊健德成志国建新亮林飞春云清凤香琳宏亚利翠雅丹珍芝莉丽慧巧美娇淑惠珠翔龙元全胜学祥才发武山仁义礼智信忠孝安福寿康乐和顺荣昌盛泰宁静雯蕾薇菲婉娴瑾颖露瑞凯旭阳光威毅坚定达伦昊天宸逸泽楠铭皓航钰彤妍馨悦琬然诗韵芸雁蓉倩茜影荔枝思源家豪振宇永生长青少杰晶莹碧霄芸菁蔓卉秋冬夏雷电霖沛涵润洁澄澈淼森松柏桐楷栋梁樟杨柳梅兰竹菊荷莲菡萏莎芷若茗岚嵩岳峻崇巍峥嵘";
+
+    // 组合人名用的姓氏和名字, 第一次需要时再构建
+    private static volatile Combinations combinations;
+
     static {
         MultiResourcesUtils.load("names.txt").stream().filter(name -> name.length() == 3).distinct().forEach(NAMES::add);
         LOGGER.info("人名加载完毕, 人名个数: {}", NAMES.size());
     }
 
     public static void clear() {
-        NAMES.clear();
+        // 不修改原来的列表, 已经返回的人名列表仍然可用
+        NAMES = new ArrayList<>();
+        combinations = null;
     }
 
     public static List<String> getNames(int count) {
@@ -28,30 +41,191 @@ public class PeopleNames {
     }
 
     public static List<String> getNames(int count, Collection<String> exclude) {
-        if (count == NAMES.size()) {
-            return Collections.unmodifiableList(NAMES);
+        return getNames("people_names", count, exclude);
+    }
+
+    /**
+     * @param stream 随机数流的名字, 相同的种子和stream得到相同的人名列表
+     * @return 没有exclude时返回按需计算的只读列表, 不会一次性生成所有人名
+     */
+    public static List<String> getNames(String stream, int count, Collection<String> exclude) {
+        if (exclude == null || exclude.isEmpty()) {
+            Universe universe = universe(count);
+            return new NameList(universe, new Permutation(universe.size(), RowRandom.seedOf(stream)), count);
+        }
+        // 需要排除的人名较少时才会用到, 按排列的顺序跳过被排除的人名
+        Set<String> excluded = exclude instanceof Set ? (Set<String>) exclude : new HashSet<>(exclude);
+        Universe universe = universe(count + excluded.size());
+        Permutation permutation = new Permutation(universe.size(), RowRandom.seedOf(stream));
+        List<String> result = new ArrayList<>(count);
+        for (long i = 0; i < universe.size() && result.size() < count; i++) {
+            String name = universe.get(permutation.apply(i));
+            if (!excluded.contains(name)) {
+                result.add(name);
+            }
+        }
+        if (result.size() < count) {
+            throw new RuntimeException("指定的人数过多, 不能大于: " + result.size());
+        }
+        return result;
+    }
+
+    /**
+     * 能容纳count个人名的候选集, 词典够用时只用词典
+     */
+    private static Universe universe(int count) {
+        List<String> names = NAMES;
+        if (count <= names.size()) {
+            return new Universe() {
+                @Override
+                public long size() {
+                    return names.size();
+                }
+
+                @Override
+                public String get(long index) {
+                    return names.get((int) index);
+                }
+            };
         }
-        if (count > NAMES.size()) {
-            throw new RuntimeException("指定的人数过多, 不能大于: " + NAMES.size());
+        Combinations universe = combinations;
+        if (universe == null) {
+            synchronized (PeopleNames.class) {
+                universe = combinations;
+                if (universe == null) {
+                    universe = new Combinations();
+                    combinations = universe;
+                }
+            }
+        }
+        if (count > universe.size()) {
+            throw new RuntimeException("指定的人数过多, 不能大于: " + universe.size());
         }
-        //如何在M个人名中随机地选择N个?
-        long start = System.currentTimeMillis();
-        Set<String> data = new HashSet<>();
-        Random random = new Random(System.nanoTime());
-        while (data.size() < count) {
-            long cost = System.currentTimeMillis() - start;
-            if (cost > 60000) {
-                break;
+        return universe;
+    }
+
+    private interface Universe {
+        long size();
+
+        String get(long index);
+    }
+
+    /**
+     * 姓氏 × 名字, 第index个人名是第index / 名字数个姓氏加上第index % 名字数个名字
+     * 姓氏都是单字, 名字各不相同, 所以组合出的人名也各不相同
+     */
+    private static class Combinations implements Universe {
+        private final String[] surnames;
+        private final String[] givenNames;
+
+        Combinations() {
+            Set<String> surnameSet = new LinkedHashSet<>();
+            Set<String> givenNameSet = new LinkedHashSet<>();
+            for (String name : NAMES) {
+                surnameSet.add(name.substring(0, 1));
+                givenNameSet.add(name.substring(1));
             }
-            int index = random.nextInt(NAMES.size());
-            String name = NAMES.get(index);
-            if (exclude == null || !exclude.contains(name)) {
-                data.add(name);
+            COMMON_SURNAMES.codePoints().forEach(c -> surnameSet.add(new String(Character.toChars(c))));
+            List<String> chars = new ArrayList<>();
+            COMMON_GIVEN_CHARS.codePoints().mapToObj(c -> new String(Character.toChars(c))).distinct().forEach(chars::add);
+            givenNameSet.addAll(chars);
+            for (String first : chars) {
+                for (String second : chars) {
+                    givenNameSet.add(first + second);
+                }
             }
+            surnames = surnameSet.toArray(new String[0]);
+            givenNames = givenNameSet.toArray(new String[0]);
+            LOGGER.info("组合人名: 姓氏个数: {}, 名字个数: {}, 可组合人名数: {}", surnames.length, givenNames.length, size());
+        }
+
+        @Override
+        public long size() {
+            return (long) surnames.length * givenNames.length;
+        }
+
+        @Override
+        public String get(long index) {
+            return surnames[(int) (index / givenNames.length)] + givenNames[(int) (index % givenNames.length)];
+        }
+    }
+
+    /**
+     * [0, size)上的伪随机排列, 4轮Feistel网络加循环游走, 每个序号O(1)计算, 不需要额外内存
+     */
+    private static class Permutation {
+        private final long size;
+        private final int halfBits;
+        private final long halfMask;
+        private final long[] keys = new long[4];
+
+        Permutation(long size, long seed) {
+            this.size = size;
+            int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(Math.max(1, size - 1)));
+            if (bits % 2 == 1) {
+                bits++;
+            }
+            this.halfBits = bits / 2;
+            this.halfMask = (1L << halfBits) - 1;
+            for (int i = 0; i < keys.length; i++) {
+                seed += 0x9E3779B97F4A7C15L;
+                keys[i] = mix(seed);
+            }
+        }
+
+        long apply(long index) {
+            long value = index;
+            // 定义域是2的整数次幂, 落在[size, 2^bits)时继续置换, 直到落回[0, size)
+            do {
+                value = round(value);
+            } while (value >= size);
+            return value;
+        }
+
+        private long round(long value) {
+            long left = value >>> halfBits;
+            long right = value & halfMask;
+            for (long key : keys) {
+                long next = left ^ (mix(right ^ key) & halfMask);
+                left = right;
+                right = next;
+            }
+            return (left << halfBits) | right;
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * 按需计算的只读人名列表
+     */
+    private static class NameList extends AbstractList<String> implements RandomAccess {
+        private final Universe universe;
+        private final Permutation permutation;
+        private final int size;
+
+        NameList(Universe universe, Permutation permutation, int size) {
+            this.universe = universe;
+            this.permutation = permutation;
+            this.size = size;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+            }
+            return universe.get(permutation.apply(index));
+        }
+
+        @Override
+        public int size() {
+            return size;
         }
-        List<String> result = data.stream().collect(Collectors.toList());
-        data.clear();
-        return result;
     }
 
     public static void main(String[] args) {
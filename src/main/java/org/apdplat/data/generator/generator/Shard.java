@@ -0,0 +1,65 @@
+package org.apdplat.data.generator.generator;
+
+import org.apdplat.data.generator.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 多个pod分片生成, 分片数由generator.shardCount指定, 分片序号由generator.shardIndex指定
+ * 没有配置分片序号时使用Kubernetes Indexed Job的环境变量JOB_COMPLETION_INDEX
+ * 每个分片生成合同序号的一段连续范围, 合同和明细的id由序号决定, 所以各个分片的id不会重叠
+ * 维度表只由0号分片生成, 其它分片通过Checkpoint等待0号分片生成完维度表之后再开始
+ */
+public class Shard {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Shard.class);
+
+    private static final int COUNT = Math.max(1, Config.getIntValue("generator.shardCount", 1));
+    private static final int INDEX = initIndex();
+
+    private Shard() {
+    }
+
+    private static int initIndex() {
+        int index = Config.getIntValue("generator.shardIndex", -1);
+        if (index == -1) {
+            String env = System.getenv("JOB_COMPLETION_INDEX");
+            index = env == null || env.trim().isEmpty() ? 0 : Integer.parseInt(env.trim());
+        }
+        if (index < 0 || index >= COUNT) {
+            throw new IllegalArgumentException("分片序号 " + index + " 超出范围, 分片数: " + COUNT);
+        }
+        if (COUNT > 1) {
+            LOGGER.info("分片生成, 分片序号: {}, 分片数: {}", index, COUNT);
+        }
+        return index;
+    }
+
+    public static int getIndex() {
+        return INDEX;
+    }
+
+    public static int getCount() {
+        return COUNT;
+    }
+
+    public static boolean isSharded() {
+        return COUNT > 1;
+    }
+
+    /**
+     * 0号分片负责维度表、清空数据、重建索引等只需要做一次的工作
+     */
+    public static boolean isFirst() {
+        return INDEX == 0;
+    }
+
+    /**
+     * 当前分片负责的[start, end)中的一段, 各个分片的范围连续且不重叠, 大小最多相差1
+     */
+    public static int[] slice(int start, int end) {
+        long total = (long) end - start;
+        int from = (int) (start + total * INDEX / COUNT);
+        int to = (int) (start + total * (INDEX + 1) / COUNT);
+        return new int[]{from, to};
+    }
+}
@@ -0,0 +1,219 @@
+package org.apdplat.data.generator.mysql;
+
+import org.apdplat.data.generator.utils.Config;
+import org.apdplat.data.generator.utils.MultiResourcesUtils;
+import org.apdplat.data.generator.utils.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 批量导入模式, 配置项mysql.bulkLoad=true时启用:
+ * 1. 生成之前删除外键和二级索引, 连接池的每个连接都设置unique_checks=0和foreign_key_checks=0
+ * 2. 生成数据, 每行只需要维护主键索引
+ * 3. 生成之后每张表一条ALTER TABLE重建所有二级索引, 各个表并行重建, 最后恢复外键
+ * 索引和外键的定义取自model_ddl.sql, 而不是删除前的表结构, 所以上次中途失败留下的没有索引的表也能恢复
+ */
+public class BulkLoad {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoad.class);
+    // 连接池中每个连接的初始化语句
+    public static final String SESSION_SQL = "SET unique_checks = 0, foreign_key_checks = 0";
+
+    private static final Pattern TABLE = Pattern.compile("^CREATE\\s+TABLE\\s+`(\\w+)`", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INDEX = Pattern.compile("^KEY\\s+`(\\w+)`\\s*\\(.*\\)");
+    private static final Pattern FOREIGN_KEY = Pattern.compile("^CONSTRAINT\\s+`(\\w+)`\\s+FOREIGN\\s+KEY.*\\)");
+
+    private BulkLoad() {
+    }
+
+    public static boolean isEnabled() {
+        return Config.getBooleanValue("mysql.bulkLoad", false);
+    }
+
+    /**
+     * 删除tables的外键和二级索引, 先删除所有表的外键, 因为外键依赖索引
+     */
+    public static void disable(String... tables) {
+        long start = System.currentTimeMillis();
+        Map<String, Definitions> definitions = loadDefinitions();
+        for (String table : tables) {
+            Definitions definition = definitions.get(table);
+            if (definition == null) {
+                continue;
+            }
+            List<String> drops = new ArrayList<>();
+            Set<String> existing = getForeignKeys(table);
+            definition.foreignKeys.keySet().stream().filter(existing::contains).forEach(name -> drops.add("DROP FOREIGN KEY `" + name + "`"));
+            alter(table, drops);
+        }
+        for (String table : tables) {
+            Definitions definition = definitions.get(table);
+            if (definition == null) {
+                continue;
+            }
+            List<String> drops = new ArrayList<>();
+            Set<String> existing = getIndexes(table);
+            definition.indexes.keySet().stream().filter(existing::contains).forEach(name -> drops.add("DROP INDEX `" + name + "`"));
+            alter(table, drops);
+        }
+        LOGGER.info("批量导入: 删除外键及二级索引耗时: {}", TimeUtils.getTimeDes(System.currentTimeMillis() - start));
+    }
+
+    /**
+     * 按model_ddl.sql重建tables中缺少的二级索引和外键, 索引按表并行重建
+     */
+    public static void restore(String... tables) {
+        long start = System.currentTimeMillis();
+        Map<String, Definitions> definitions = loadDefinitions();
+        List<Thread> threads = new ArrayList<>();
+        for (String table : tables) {
+            Definitions definition = definitions.get(table);
+            if (definition == null) {
+                continue;
+            }
+            Set<String> existing = getIndexes(table);
+            List<String> adds = new ArrayList<>();
+            definition.indexes.forEach((name, sql) -> {
+                if (!existing.contains(name)) {
+                    adds.add("ADD " + sql);
+                }
+            });
+            if (adds.isEmpty()) {
+                continue;
+            }
+            Thread thread = new Thread(() -> {
+                long tableStart = System.currentTimeMillis();
+                alter(table, adds);
+                LOGGER.info("批量导入: 表 {} 重建 {} 个索引耗时: {}", table, adds.size(), TimeUtils.getTimeDes(System.currentTimeMillis() - tableStart));
+            }, "rebuild-index-" + table);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                LOGGER.error("等待重建索引被中断", e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        long indexEnd = System.currentTimeMillis();
+        LOGGER.info("批量导入: 重建二级索引耗时: {}", TimeUtils.getTimeDes(indexEnd - start));
+        // 生成的数据满足外键约束, foreign_key_checks=0时添加外键不需要逐行校验
+        for (String table : tables) {
+            Definitions definition = definitions.get(table);
+            if (definition == null) {
+                continue;
+            }
+            Set<String> existing = getForeignKeys(table);
+            List<String> adds = new ArrayList<>();
+            definition.foreignKeys.forEach((name, sql) -> {
+                if (!existing.contains(name) && Schema.supportsForeignKey(table, sql)) {
+                    adds.add("ADD " + sql);
+                }
+            });
+            alter(table, adds);
+        }
+        LOGGER.info("批量导入: 恢复外键耗时: {}", TimeUtils.getTimeDes(System.currentTimeMillis() - indexEnd));
+    }
+
+    private static void alter(String table, List<String> clauses) {
+        if (clauses.isEmpty()) {
+            return;
+        }
+        String sql = "ALTER TABLE `" + table + "` " + String.join(", ", clauses);
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            return;
+        }
+        Statement st = null;
+        try {
+            st = con.createStatement();
+            st.execute(SESSION_SQL);
+            st.execute(sql);
+            LOGGER.info("批量导入: {}", sql);
+        } catch (Exception e) {
+            LOGGER.error("批量导入: 执行失败: {}", sql, e);
+        } finally {
+            MySQLUtils.close(con, st);
+        }
+    }
+
+    private static Set<String> getIndexes(String table) {
+        return query("select index_name from information_schema.statistics where table_schema = database() and table_name = ?", table);
+    }
+
+    private static Set<String> getForeignKeys(String table) {
+        return query("select constraint_name from information_schema.table_constraints where table_schema = database() and table_name = ? and constraint_type = 'FOREIGN KEY'", table);
+    }
+
+    private static Set<String> query(String sql, String table) {
+        Set<String> names = new HashSet<>();
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            return names;
+        }
+        PreparedStatement pst = null;
+        ResultSet rs = null;
+        try {
+            pst = con.prepareStatement(sql);
+            pst.setString(1, table);
+            rs = pst.executeQuery();
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        } catch (Exception e) {
+            LOGGER.error("查询失败, table: {}", table, e);
+        } finally {
+            MySQLUtils.close(con, pst, rs);
+        }
+        return names;
+    }
+
+    /**
+     * 从model_ddl.sql中读取每张表的二级索引和外键定义
+     */
+    private static Map<String, Definitions> loadDefinitions() {
+        Map<String, Definitions> definitions = new LinkedHashMap<>();
+        Definitions current = null;
+        for (String line : MultiResourcesUtils.load("model_ddl.sql")) {
+            Matcher matcher = TABLE.matcher(line);
+            if (matcher.find()) {
+                current = new Definitions();
+                definitions.put(matcher.group(1), current);
+                continue;
+            }
+            if (current == null) {
+                continue;
+            }
+            matcher = INDEX.matcher(line);
+            if (matcher.find()) {
+                current.indexes.put(matcher.group(1), matcher.group());
+                continue;
+            }
+            matcher = FOREIGN_KEY.matcher(line);
+            if (matcher.find()) {
+                current.foreignKeys.put(matcher.group(1), matcher.group());
+            }
+        }
+        return definitions;
+    }
+
+    private static class Definitions {
+        private final Map<String, String> indexes = new LinkedHashMap<>();
+        private final Map<String, String> foreignKeys = new LinkedHashMap<>();
+    }
+}
@@ -11,6 +11,8 @@ import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by ysc on 18/04/2018.
@@ -18,6 +20,13 @@ import java.sql.*;
 public class MySQLUtils {
     private static final Logger LOGGER = LoggerFactory.getLogger(MySQLUtils.class);
 
+    // 连接池最大连接数, 批量生成的工作线程数不超过这个值
+    public static final int MAX_CONNECTIONS = 16;
+    // 服务器端的id分配表, 见reserveIds
+    private static final String ID_SEQUENCE_TABLE = "generator_id_sequence";
+    private static final String ID_SEQUENCE_DDL = "CREATE TABLE IF NOT EXISTS `" + ID_SEQUENCE_TABLE + "` (`name` varchar(64) NOT NULL, "
+            + "`next_id` bigint(20) NOT NULL, PRIMARY KEY (`name`)) ENGINE = InnoDB";
+
     private static final String DRIVER = "com.mysql.cj.jdbc.Driver";
     private static final String URL = Config.getStringValue("mysql.url") == null ? "jdbc:mysql://192.168.252.193:3306/demo?useUnicode=true&characterEncoding=utf8" : Config.getStringValue("mysql.url");
     private static final String USER = Config.getStringValue("mysql.user") == null ? "root" : Config.getStringValue("mysql.user");
@@ -28,7 +37,7 @@ public class MySQLUtils {
     static {
         try {
             Class.forName(DRIVER);
-            dataSource = setupDataSource(URL, USER, PASSWORD);
+            dataSource = setupDataSource(withLoadLocalInfile(URL), USER, PASSWORD);
         } catch (ClassNotFoundException e) {
             LOGGER.error("MySQL驱动加载失败：", e);
         }
@@ -37,6 +46,17 @@ public class MySQLUtils {
     private MySQLUtils() {
     }
 
+    /**
+     * 有表使用LOAD DATA LOCAL INFILE写入(mysql.write或mysql.write.表名配置为load)时, 打开驱动的allowLoadLocalInfile
+     */
+    private static String withLoadLocalInfile(String url) {
+        if (url.contains("allowLoadLocalInfile") || !Config.getValues("mysql.write").containsValue("load")) {
+            return url;
+        }
+        LOGGER.info("使用LOAD DATA写入, 连接参数增加allowLoadLocalInfile=true");
+        return url + (url.contains("?") ? "&" : "?") + "allowLoadLocalInfile=true";
+    }
+
     public static int getCount(String table) {
         Connection con = MySQLUtils.getConnection();
         if (con == null) {
@@ -58,6 +78,115 @@ public class MySQLUtils {
         return 0;
     }
 
+    /**
+     * 表中最大的id, 表为空时返回0, 查询失败时抛出IllegalStateException, 不能当成空表
+     */
+    public static long getMaxId(String table) {
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            throw new IllegalStateException("查询表 " + table + " 的最大id失败, 没有数据库连接");
+        }
+        PreparedStatement pst = null;
+        ResultSet rs = null;
+        try {
+            pst = con.prepareStatement("select max(id) from " + table);
+            rs = pst.executeQuery();
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException("查询表 " + table + " 的最大id失败", e);
+        } finally {
+            MySQLUtils.close(con, pst, rs);
+        }
+    }
+
+    /**
+     * 在服务器端为表原子地预留count个连续的id, 返回第一个, 多个进程(实时生成、批量生成)同时分配也不会重叠
+     * 每张表在ID_SEQUENCE_TABLE中一行, next_id是下一个可以分配的id, 不小于表中的最大id加1
+     * 用LAST_INSERT_ID(expr)在同一条update中加锁、递增并取回新值, 失败时抛出IllegalStateException
+     */
+    public static long reserveIds(String table, int count) {
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            throw new IllegalStateException("为表 " + table + " 分配id失败, 没有数据库连接");
+        }
+        Statement st = null;
+        PreparedStatement pst = null;
+        ResultSet rs = null;
+        try {
+            st = con.createStatement();
+            st.execute(ID_SEQUENCE_DDL);
+            pst = con.prepareStatement("insert ignore into " + ID_SEQUENCE_TABLE + " (name, next_id) values (?, 1)");
+            pst.setString(1, table);
+            pst.executeUpdate();
+            pst.close();
+            // 表中已有的数据(以前AUTO_INCREMENT写入的, 或者没有经过这里分配的)之后才开始分配
+            pst = con.prepareStatement("update " + ID_SEQUENCE_TABLE + " set next_id = LAST_INSERT_ID(greatest(next_id, "
+                    + "(select coalesce(max(id), 0) + 1 from " + table + ")) + ?) where name = ?");
+            pst.setInt(1, count);
+            pst.setString(2, table);
+            pst.executeUpdate();
+            rs = st.executeQuery("select LAST_INSERT_ID()");
+            rs.next();
+            return rs.getLong(1) - count;
+        } catch (SQLException e) {
+            throw new IllegalStateException("为表 " + table + " 分配id失败", e);
+        } finally {
+            MySQLUtils.close(pst);
+            MySQLUtils.close(con, st, rs);
+        }
+    }
+
+    /**
+     * 清空表之后调用, 表的id重新从1开始分配
+     */
+    public static void resetIds(List<String> tables) {
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            return;
+        }
+        Statement st = null;
+        PreparedStatement pst = null;
+        try {
+            st = con.createStatement();
+            st.execute(ID_SEQUENCE_DDL);
+            pst = con.prepareStatement("delete from " + ID_SEQUENCE_TABLE + " where name = ?");
+            for (String table : tables) {
+                pst.setString(1, table);
+                pst.executeUpdate();
+            }
+        } catch (Exception e) {
+            LOGGER.error("重置id分配失败, tables: {}", tables, e);
+        } finally {
+            MySQLUtils.close(pst);
+            MySQLUtils.close(con, st);
+        }
+    }
+
+    /**
+     * 表中实际的最小id和最大id, 表为空或者查询失败时返回null
+     */
+    public static long[] getIdRange(String table) {
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            return null;
+        }
+        PreparedStatement pst = null;
+        ResultSet rs = null;
+        try {
+            pst = con.prepareStatement("select min(id), max(id) from " + table);
+            rs = pst.executeQuery();
+            if (rs.next() && rs.getObject(1) != null) {
+                return new long[]{rs.getLong(1), rs.getLong(2)};
+            }
+        } catch (Exception e) {
+            LOGGER.error("查询失败", e);
+        } finally {
+            MySQLUtils.close(con, pst, rs);
+        }
+        return null;
+    }
+
     public static void clean(String table) {
         Connection con = getConnection();
         if (con == null) {
@@ -104,6 +233,10 @@ public class MySQLUtils {
         //
         PoolableConnectionFactory poolableConnectionFactory =
                 new PoolableConnectionFactory(connectionFactory, null);
+        // 批量导入模式下每个连接都关闭唯一性检查和外键检查
+        if (BulkLoad.isEnabled()) {
+            poolableConnectionFactory.setConnectionInitSql(Collections.singletonList(BulkLoad.SESSION_SQL));
+        }
 
         //
         // Now we'll need a ObjectPool that serves as the
@@ -114,8 +247,8 @@ public class MySQLUtils {
         //
         // 配置连接池参数
         GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
-        poolConfig.setMaxTotal(16); // 最大连接数等于cpu个数，避免连接数过多导致cpu占用过高以及切换连接过多导致的性能下降
-        poolConfig.setMaxIdle(16);  // 最大空闲连接数
+        poolConfig.setMaxTotal(MAX_CONNECTIONS); // 最大连接数等于cpu个数，避免连接数过多导致cpu占用过高以及切换连接过多导致的性能下降
+        poolConfig.setMaxIdle(MAX_CONNECTIONS); // 最大空闲连接数
         poolConfig.setMinIdle(8);   // 最小空闲连接数
 
         ObjectPool<PoolableConnection> connectionPool =
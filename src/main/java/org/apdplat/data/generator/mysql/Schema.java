@@ -0,0 +1,206 @@
+package org.apdplat.data.generator.mysql;
+
+import org.apdplat.data.generator.utils.Config;
+import org.apdplat.data.generator.utils.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 生成数据前清空表, 由配置项generator.reset指定方式:
+ * truncate(默认) 关闭外键检查后按子表在前的顺序TRUNCATE, 不产生undo日志, AUTO_INCREMENT归零
+ * recreate       按model_ddl.sql删除并重建表, 可以用mysql.table.options及mysql.table.options.表名追加表选项
+ * delete         逐行delete from, 以前的方式, 数据量大时很慢
+ */
+public class Schema {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Schema.class);
+
+    public static final String TRUNCATE = "truncate";
+    public static final String RECREATE = "recreate";
+    public static final String DELETE = "delete";
+
+    private static final Pattern TABLE = Pattern.compile("^(DROP\\s+TABLE\\s+IF\\s+EXISTS|CREATE\\s+TABLE)\\s+`(\\w+)`", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PARTITION = Pattern.compile("PARTITION\\s+BY", Pattern.CASE_INSENSITIVE);
+    private static final Pattern REFERENCES = Pattern.compile("REFERENCES\\s+`(\\w+)`", Pattern.CASE_INSENSITIVE);
+
+    private Schema() {
+    }
+
+    public static String getResetMode() {
+        return Config.getStringValue("generator.reset", TRUNCATE);
+    }
+
+    /**
+     * 追加到CREATE TABLE语句末尾的表选项, 比如 ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8 或者 PARTITION BY HASH(id) PARTITIONS 16
+     */
+    public static String getTableOptions(String table) {
+        return Config.getStringValue("mysql.table.options." + table, Config.getStringValue("mysql.table.options", ""));
+    }
+
+    public static boolean isPartitioned(String table) {
+        return PARTITION.matcher(getTableOptions(table)).find();
+    }
+
+    /**
+     * InnoDB的分区表既不能有外键, 也不能被外键引用, 这样的外键建表时去掉, 批量导入模式也不恢复
+     * @param constraint model_ddl.sql中的外键定义, CONSTRAINT `x` FOREIGN KEY (...) REFERENCES `t` (...)
+     */
+    public static boolean supportsForeignKey(String table, String constraint) {
+        if (isPartitioned(table)) {
+            return false;
+        }
+        Matcher matcher = REFERENCES.matcher(constraint);
+        return !matcher.find() || !isPartitioned(matcher.group(1));
+    }
+
+    /**
+     * 清空tables, tables按父表在前的顺序给出, 删除时反过来
+     */
+    public static void reset(String... tables) {
+        long start = System.currentTimeMillis();
+        String mode = getResetMode();
+        List<String> childrenFirst = new ArrayList<>(Arrays.asList(tables));
+        Collections.reverse(childrenFirst);
+        switch (mode) {
+            case TRUNCATE:
+                truncate(childrenFirst);
+                break;
+            case RECREATE:
+                execute(loadDdl(Arrays.asList(tables)));
+                break;
+            case DELETE:
+                execute(childrenFirst.stream().map(table -> "DELETE FROM `" + table + "`").collect(Collectors.toList()));
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的generator.reset: " + mode);
+        }
+        MySQLUtils.resetIds(childrenFirst);
+        LOGGER.info("重置数据({})耗时: {}", mode, TimeUtils.getTimeDes(System.currentTimeMillis() - start));
+    }
+
+    /**
+     * 关闭外键检查后依次TRUNCATE
+     */
+    public static void truncate(List<String> tables) {
+        List<String> sqls = new ArrayList<>();
+        sqls.add("SET foreign_key_checks = 0");
+        tables.forEach(table -> sqls.add("TRUNCATE TABLE `" + table + "`"));
+        execute(sqls);
+    }
+
+    /**
+     * 失败时抛出IllegalStateException, 之后生成的数据使用显式的id, 没有清空就继续会主键重复或者新旧数据混在一起
+     */
+    private static void execute(List<String> sqls) {
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            throw new IllegalStateException("重置数据失败, 没有数据库连接");
+        }
+        Statement st = null;
+        String current = null;
+        Exception failure = null;
+        try {
+            st = con.createStatement();
+            for (String sql : sqls) {
+                current = sql;
+                st.execute(sql);
+                LOGGER.info("执行: {}", sql.length() > 100 ? sql.substring(0, 100) + "..." : sql);
+            }
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            // 连接会回到连接池, 恢复连接池中连接的默认设置
+            try {
+                if (st != null) {
+                    st.execute(BulkLoad.isEnabled() ? BulkLoad.SESSION_SQL : "SET foreign_key_checks = 1");
+                }
+            } catch (Exception e) {
+                LOGGER.error("恢复外键检查失败", e);
+            }
+            MySQLUtils.close(con, st);
+        }
+        if (failure != null) {
+            throw new IllegalStateException("重置数据失败: " + current, failure);
+        }
+    }
+
+    /**
+     * 读取model_ddl.sql中tables的DROP和CREATE语句以及SET语句, 忽略建库和use, 使用mysql.url中的数据库
+     */
+    private static List<String> loadDdl(List<String> tables) {
+        String text = readResource("model_ddl.sql");
+        // 去掉块注释和行注释
+        text = text.replaceAll("(?s)/\\*.*?\\*/", "");
+        text = Arrays.stream(text.split("\n")).filter(line -> !line.trim().startsWith("--")).collect(Collectors.joining("\n"));
+        List<String> sqls = new ArrayList<>();
+        for (String statement : text.split(";")) {
+            String sql = statement.trim();
+            if (sql.isEmpty()) {
+                continue;
+            }
+            if (sql.toUpperCase().startsWith("SET ")) {
+                sqls.add(sql);
+                continue;
+            }
+            Matcher matcher = TABLE.matcher(sql);
+            if (!matcher.find() || !tables.contains(matcher.group(2))) {
+                continue;
+            }
+            if (matcher.group(1).toUpperCase().startsWith("CREATE")) {
+                sql = withOptions(matcher.group(2), sql);
+            }
+            sqls.add(sql);
+        }
+        return sqls;
+    }
+
+    private static String withOptions(String table, String sql) {
+        List<String> lines = new ArrayList<>();
+        for (String line : sql.split("\n")) {
+            if (line.trim().startsWith("CONSTRAINT") && !supportsForeignKey(table, line)) {
+                LOGGER.warn("表 {} 或者外键引用的表使用分区, 去掉外键: {}", table, line.trim());
+                continue;
+            }
+            lines.add(line);
+        }
+        // 去掉最后一个约束后, 上一行末尾多余的逗号
+        sql = String.join("\n", lines).replaceAll(",(\\s*\\)\\s*ENGINE)", "$1");
+        String options = getTableOptions(table);
+        if (options.isEmpty()) {
+            return sql;
+        }
+        LOGGER.info("表 {} 的表选项: {}", table, options);
+        return sql + "\n" + options;
+    }
+
+    private static String readResource(String name) {
+        StringBuilder text = new StringBuilder();
+        try (InputStream in = Schema.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("资源不存在: " + name);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                text.append(line).append("\n");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("读取资源失败: " + name, e);
+        }
+        return text.toString();
+    }
+}
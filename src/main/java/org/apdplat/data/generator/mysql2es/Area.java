@@ -5,8 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.ResultSet;
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.SQLException;
 
 /**
  * Created by ysc on 20/04/2018.
@@ -16,6 +15,10 @@ public class Area extends Output{
 
     private static final String INDEX = "area";
     private static final String TYPE = "area";
+    private static final byte[] CITY = NdjsonEncoder.name("city");
+    private static final byte[] CITY_FULL = NdjsonEncoder.name("city_full");
+    private static final byte[] PROVINCE = NdjsonEncoder.name("province");
+    private static final byte[] PROVINCE_FULL = NdjsonEncoder.name("province_full");
 
     private void generateCommand() {
         String sql = "select id, city, city_full, province, province_full, area.longitude, area.latitude from area";
@@ -23,30 +26,12 @@ public class Area extends Output{
     }
 
     @Override
-    protected Map<String, Object> getRow(ResultSet rs){
-        Map<String, Object> data = new HashMap<>();
-        try {
-            int id = rs.getInt("id");
-            String city = rs.getString("city");
-            String city_full = rs.getString("city_full");
-            String province = rs.getString("province");
-            String province_full = rs.getString("province_full");
-            Float longitude = rs.getFloat("longitude");
-            Float latitude = rs.getFloat("latitude");
-
-            data.put("id", id);
-            data.put("city", city);
-            data.put("city_full", city_full);
-            data.put("province", province);
-            data.put("province_full", province_full);
-            Map<String, Float> location = new HashMap<>();
-            location.put("lon", longitude);
-            location.put("lat", latitude);
-            data.put("geo_location", location);
-        }catch (Exception e){
-            LOGGER.error("获取数据异常", e);
-        }
-        return data;
+    protected void encode(ResultSet rs, NdjsonEncoder doc) throws SQLException {
+        doc.field(CITY, rs.getString("city"));
+        doc.field(CITY_FULL, rs.getString("city_full"));
+        doc.field(PROVINCE, rs.getString("province"));
+        doc.field(PROVINCE_FULL, rs.getString("province_full"));
+        doc.geo(rs.getFloat("longitude"), rs.getFloat("latitude"));
     }
 
     @Override
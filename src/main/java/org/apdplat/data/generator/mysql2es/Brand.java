@@ -5,8 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.ResultSet;
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.SQLException;
 
 /**
  * Created by ysc on 29/04/2018.
@@ -16,6 +15,7 @@ public class Brand extends Output{
 
     private static final String INDEX = "brand";
     private static final String TYPE = "brand";
+    private static final byte[] NAME = NdjsonEncoder.name("name");
 
     private void generateCommand() {
         String sql = "select id, name from brand";
@@ -23,18 +23,8 @@ public class Brand extends Output{
     }
 
     @Override
-    protected Map<String, Object> getRow(ResultSet rs){
-        Map<String, Object> data = new HashMap<>();
-        try {
-            int id = rs.getInt("id");
-            String name = rs.getString("name");
-
-            data.put("id", id);
-            data.put("name", name);
-        }catch (Exception e){
-            LOGGER.error("获取数据异常", e);
-        }
-        return data;
+    protected void encode(ResultSet rs, NdjsonEncoder doc) throws SQLException {
+        doc.field(NAME, rs.getString("name"));
     }
 
     @Override
@@ -0,0 +1,176 @@
+package org.apdplat.data.generator.mysql2es;
+
+import org.apdplat.data.generator.utils.Config;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个索引导出时的ES批量索引阶段, 所有读取线程共用
+ * 最多es.bulk.concurrentRequests个bulk请求同时进行, 都在进行中时add阻塞, 读取线程随之放慢(背压)
+ * 为0时在读取线程中直接发送, 默认: output.async=true时为output.async.thread.count, 否则为0
+ * ES拒绝(429)的文档以及连接失败的请求按指数退避重试: es.bulk.retryMillis, 2倍, 4倍..., 最多es.bulk.retries次
+ * close()等待所有请求完成后关闭线程, 每个索引导出结束时调用, 有文档最终没有索引成功时抛出IllegalStateException
+ */
+class BulkIndexer implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkIndexer.class);
+
+    private static final int RETRIES = Config.getIntValue("es.bulk.retries", 8);
+    private static final long RETRY_MILLIS = Config.getLongValue("es.bulk.retryMillis", 100);
+
+    private final RestHighLevelClient client;
+    private final String index;
+    private final String type;
+    private final int concurrentRequests;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    BulkIndexer(RestHighLevelClient client, String index, String type, int concurrentRequests) {
+        this.client = client;
+        this.index = index;
+        this.type = type;
+        this.concurrentRequests = Math.max(0, concurrentRequests);
+        if (this.concurrentRequests > 0) {
+            AtomicInteger threads = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(this.concurrentRequests, r -> new Thread(r, index + "-bulk-" + threads.incrementAndGet()));
+            this.inFlight = new Semaphore(this.concurrentRequests);
+        } else {
+            this.executor = null;
+            this.inFlight = null;
+        }
+        LOGGER.info("索引 {} 同时进行的bulk请求数: {}", index, this.concurrentRequests);
+    }
+
+    /**
+     * 发送encoder中已经编码的文档, 异步发送时复制一份, encoder返回后即可重复使用
+     */
+    void add(NdjsonEncoder encoder) throws Exception {
+        if (executor == null) {
+            try {
+                send(encoder.getBuffer(), encoder.getLength());
+            } catch (Exception e) {
+                // 和异步发送一样只记录下来, 继续发送后面的文档, close()时报告失败
+                LOGGER.error("索引 {} bulk请求失败", index, e);
+            }
+            return;
+        }
+        byte[] data = Arrays.copyOf(encoder.getBuffer(), encoder.getLength());
+        inFlight.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    send(data, data.length);
+                } catch (Exception e) {
+                    LOGGER.error("索引 {} bulk请求失败", index, e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void send(byte[] data, int length) throws Exception {
+        BulkRequest request = new BulkRequest();
+        // 已经是bulk格式, ES客户端只解析动作行, 文档直接引用data中的字节
+        request.add(data, 0, length, index, type, XContentType.JSON);
+        requests.incrementAndGet();
+        for (int attempt = 0; ; attempt++) {
+            BulkResponse response;
+            try {
+                response = client.bulk(request);
+            } catch (Exception e) {
+                if (attempt < RETRIES && isRetryable(e)) {
+                    backoff(attempt, request.numberOfActions(), e.getMessage());
+                    continue;
+                }
+                failed.addAndGet(request.numberOfActions());
+                throw e;
+            }
+            if (!response.hasFailures()) {
+                indexed.addAndGet(request.numberOfActions());
+                return;
+            }
+            // 只重试被拒绝的文档, 其它失败的文档记录下来
+            BulkRequest rejected = new BulkRequest();
+            int failures = 0;
+            String message = null;
+            for (BulkItemResponse item : response) {
+                if (!item.isFailed()) {
+                    indexed.incrementAndGet();
+                } else if (item.status() == RestStatus.TOO_MANY_REQUESTS && attempt < RETRIES) {
+                    rejected.add(request.requests().get(item.getItemId()));
+                } else {
+                    failures++;
+                    message = item.getFailureMessage();
+                }
+            }
+            if (failures > 0) {
+                failed.addAndGet(failures);
+                LOGGER.error("ES索引失败, 索引: {}, 失败文档数: {}, 其中一个失败原因: {}", index, failures, message);
+            }
+            if (rejected.numberOfActions() == 0) {
+                return;
+            }
+            request = rejected;
+            backoff(attempt, request.numberOfActions(), "429 Too Many Requests");
+        }
+    }
+
+    private static boolean isRetryable(Exception e) {
+        return e instanceof IOException || ExceptionsHelper.status(e) == RestStatus.TOO_MANY_REQUESTS;
+    }
+
+    private void backoff(int attempt, int documents, String reason) throws InterruptedException {
+        long millis = RETRY_MILLIS << attempt;
+        retried.addAndGet(documents);
+        LOGGER.warn("索引 {} 的 {} 个文档 {} 毫秒后第 {} 次重试, 原因: {}", index, documents, millis, attempt + 1, reason);
+        Thread.sleep(millis);
+    }
+
+    /**
+     * 等待进行中的请求完成, 有文档没有索引成功时抛出IllegalStateException
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    LOGGER.info("等待索引 {} 的bulk请求完成", index);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                int pending = concurrentRequests - inFlight.availablePermits();
+                executor.shutdownNow();
+                LOGGER.error("等待索引 {} 的bulk请求完成时被中断, 没有完成的bulk请求数: {}", index, pending);
+            }
+        }
+        LOGGER.info("索引 {} 完成, bulk请求数: {}, 成功文档数: {}, 失败文档数: {}, 重试文档数: {}", index, requests.get(), indexed.get(), failed.get(), retried.get());
+        if (failed.get() > 0) {
+            throw new IllegalStateException("索引 " + index + " 有 " + failed.get() + " 个文档没有索引成功");
+        }
+    }
+}
@@ -5,8 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.ResultSet;
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.SQLException;
 
 /**
  * Created by ysc on 18/04/2018.
@@ -16,65 +15,52 @@ public class Contract extends Output{
 
     private static final String INDEX = "contract";
     private static final String TYPE = "contract";
+    private static final byte[] CONTRACT_PRICE = NdjsonEncoder.name("contract_price");
+    private static final byte[] STATE = NdjsonEncoder.name("state");
+    private static final byte[] SIGN_DAY = NdjsonEncoder.name("sign_day");
+    // output.join=memory时在内存中关联维度
+    private Dimensions dimensions;
 
     private void generateCommand() {
+        if (Dimensions.isEnabled()) {
+            dimensions = Dimensions.get();
+        }
+        if (dimensions != null) {
+            generateCommand("contract", "select contract.id, contract.contract_price, contract.state, contract.sign_day, contract.customer_id, contract.sales_staff_id from contract", INDEX, TYPE, INDEX+".sh");
+            return;
+        }
         String sql = "select contract.id, contract.contract_price, contract.state, contract.sign_day, sales_staff.`name` as sales_staff_name, sales_staff.gender as sales_staff_gender, customer.`name` as customer_name, customer.gender as customer_gender, area.city as customer_city, area.city_full as customer_city_full, area.province as customer_province, area.province_full as customer_province_full, day_dimension.dayofweek, day_dimension.weekofyear, day_dimension.`month`, day_dimension.dayofmonth, day_dimension.`quarter`, day_dimension.`year`, day_dimension.dayofyear, area.longitude, area.latitude from contract, customer, sales_staff, area, day_dimension where contract.sign_day=day_dimension.day_str and contract.customer_id=customer.id and contract.sales_staff_id=sales_staff.id and customer.area_id=area.id";
         generateCommand("contract", sql, INDEX, TYPE, INDEX+".sh");
     }
 
     @Override
-    protected Map<String, Object> getRow(ResultSet rs){
-        Map<String, Object> data = new HashMap<>();
-        try {
-            int id = rs.getInt("id");
-            float contract_price = rs.getFloat("contract_price");
-            String state = rs.getString("state");
-            String sign_day = rs.getString("sign_day");
-            String sales_staff_name = rs.getString("sales_staff_name");
-            String sales_staff_gender = rs.getString("sales_staff_gender");
-            String customer_name = rs.getString("customer_name");
-            String customer_gender = rs.getString("customer_gender");
-            String customer_city = rs.getString("customer_city");
-            String customer_city_full = rs.getString("customer_city_full");
-            String customer_province = rs.getString("customer_province");
-            String customer_province_full = rs.getString("customer_province_full");
-            int dayofweek = rs.getInt("dayofweek");
-            int weekofyear = rs.getInt("weekofyear");
-            int month = rs.getInt("month");
-            int dayofmonth = rs.getInt("dayofmonth");
-            int quarter = rs.getInt("quarter");
-            int year = rs.getInt("year");
-            int dayofyear = rs.getInt("dayofyear");
-            float longitude = rs.getFloat("longitude");
-            float latitude = rs.getFloat("latitude");
-
-            data.put("id", id);
-            data.put("contract_price", contract_price);
-            data.put("state", state);
-            data.put("sign_day", sign_day.replace(" ", "T"));
-            data.put("sales_staff_name", sales_staff_name);
-            data.put("sales_staff_gender", sales_staff_gender);
-            data.put("customer_name", customer_name);
-            data.put("customer_gender", customer_gender);
-            data.put("customer_city", customer_city);
-            data.put("customer_city_full", customer_city_full);
-            data.put("customer_province", customer_province);
-            data.put("customer_province_full", customer_province_full);
-            data.put("dayofweek", dayofweek);
-            data.put("weekofyear", weekofyear);
-            data.put("month", month);
-            data.put("dayofmonth", dayofmonth);
-            data.put("quarter", quarter);
-            data.put("year", year);
-            data.put("dayofyear", dayofyear);
-            Map<String, Float> location = new HashMap<>();
-            location.put("lon", longitude);
-            location.put("lat", latitude);
-            data.put("geo_location", location);
-        }catch (Exception e){
-            LOGGER.error("获取数据异常", e);
+    protected void encode(ResultSet rs, NdjsonEncoder doc) throws SQLException {
+        String sign_day = rs.getString("sign_day");
+        doc.field(CONTRACT_PRICE, rs.getFloat("contract_price"));
+        doc.field(STATE, rs.getString("state"));
+        doc.field(SIGN_DAY, sign_day.replace(" ", "T"));
+        if (dimensions != null) {
+            dimensions.writeSalesStaff(doc, rs.getInt("sales_staff_id"));
+            dimensions.writeCustomer(doc, rs.getInt("customer_id"));
+            dimensions.writeDay(doc, sign_day);
+            return;
         }
-        return data;
+        doc.field(Dimensions.SALES_STAFF_NAME, rs.getString("sales_staff_name"));
+        doc.field(Dimensions.SALES_STAFF_GENDER, rs.getString("sales_staff_gender"));
+        doc.field(Dimensions.CUSTOMER_NAME, rs.getString("customer_name"));
+        doc.field(Dimensions.CUSTOMER_GENDER, rs.getString("customer_gender"));
+        doc.field(Dimensions.CUSTOMER_CITY, rs.getString("customer_city"));
+        doc.field(Dimensions.CUSTOMER_CITY_FULL, rs.getString("customer_city_full"));
+        doc.field(Dimensions.CUSTOMER_PROVINCE, rs.getString("customer_province"));
+        doc.field(Dimensions.CUSTOMER_PROVINCE_FULL, rs.getString("customer_province_full"));
+        doc.field(Dimensions.DAYOFWEEK, rs.getInt("dayofweek"));
+        doc.field(Dimensions.WEEKOFYEAR, rs.getInt("weekofyear"));
+        doc.field(Dimensions.MONTH, rs.getInt("month"));
+        doc.field(Dimensions.DAYOFMONTH, rs.getInt("dayofmonth"));
+        doc.field(Dimensions.QUARTER, rs.getInt("quarter"));
+        doc.field(Dimensions.YEAR, rs.getInt("year"));
+        doc.field(Dimensions.DAYOFYEAR, rs.getInt("dayofyear"));
+        doc.geo(rs.getFloat("longitude"), rs.getFloat("latitude"));
     }
 
     @Override
@@ -5,8 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.ResultSet;
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.SQLException;
 
 /**
  * Created by ysc on 18/04/2018.
@@ -16,81 +15,66 @@ public class ContractDetail extends Output{
 
     private static final String INDEX = "detail";
     private static final String TYPE = "detail";
+    private static final byte[] CONTRACT_PRICE = NdjsonEncoder.name("contract_price");
+    private static final byte[] STATE = NdjsonEncoder.name("state");
+    private static final byte[] SIGN_DAY = NdjsonEncoder.name("sign_day");
+    private static final byte[] CONTRACT_DETAIL_PRICE = NdjsonEncoder.name("contract_detail_price");
+    private static final byte[] ITEM_QUANTITY = NdjsonEncoder.name("item_quantity");
+    // output.join=memory时在内存中关联维度, 只有合同和合同明细两张事实表在MySQL中关联
+    private Dimensions dimensions;
 
     private void generateCommand() {
+        if (Dimensions.isEnabled()) {
+            dimensions = Dimensions.get();
+        }
+        if (dimensions != null) {
+            String sql = "select contract_detail.id, contract_detail.detail_price, contract_detail.item_quantity, contract_detail.item_id, contract.contract_price, contract.state, contract.sign_day, contract.customer_id, contract.sales_staff_id from contract_detail, contract where contract_detail.contract_id=contract.id";
+            generateCommand("contract_detail", sql, INDEX, TYPE, INDEX+".sh");
+            return;
+        }
         String sql = "select contract_detail.id, contract.contract_price, contract.state, contract.sign_day, sales_staff.`name` as sales_staff_name, sales_staff.gender as sales_staff_gender, customer.`name` as customer_name, customer.gender as customer_gender, area.city as customer_city, area.city_full as customer_city_full, area.province as customer_province, area.province_full as customer_province_full, day_dimension.dayofweek, day_dimension.weekofyear, day_dimension.`month`, day_dimension.dayofmonth, day_dimension.`quarter`, day_dimension.`year`, day_dimension.dayofyear, contract_detail.detail_price as contract_detail_price, contract_detail.item_quantity, item.`name` as item_name, item.price as item_price, area.longitude, area.latitude, item.discount, item.color, brand.name as brand_name, category.name as category_name from contract_detail, item, contract, customer, sales_staff, area, day_dimension, brand, category where contract_detail.contract_id=contract.id and contract_detail.item_id=item.id and contract.sign_day=day_dimension.day_str and contract.customer_id=customer.id and contract.sales_staff_id=sales_staff.id and customer.area_id=area.id and item.category_id=category.id and item.brand_id=brand.id";
         generateCommand("contract_detail", sql, INDEX, TYPE, INDEX+".sh");
     }
 
     @Override
-    protected Map<String, Object> getRow(ResultSet rs){
-        Map<String, Object> data = new HashMap<>();
-        try {
-            int id = rs.getInt("id");
-            float contract_price = rs.getFloat("contract_price");
-            String state = rs.getString("state");
-            String sign_day = rs.getString("sign_day").replace(" ", "T");
-            String sales_staff_name = rs.getString("sales_staff_name");
-            String sales_staff_gender = rs.getString("sales_staff_gender");
-            String customer_name = rs.getString("customer_name");
-            String customer_gender = rs.getString("customer_gender");
-            String customer_city = rs.getString("customer_city");
-            String customer_city_full = rs.getString("customer_city_full");
-            String customer_province = rs.getString("customer_province");
-            String customer_province_full = rs.getString("customer_province_full");
-            int dayofweek = rs.getInt("dayofweek");
-            int weekofyear = rs.getInt("weekofyear");
-            int month = rs.getInt("month");
-            int dayofmonth = rs.getInt("dayofmonth");
-            int quarter = rs.getInt("quarter");
-            int year = rs.getInt("year");
-            int dayofyear = rs.getInt("dayofyear");
-            float contract_detail_price = rs.getFloat("contract_detail_price");
-            float item_quantity = rs.getFloat("item_quantity");
-            String item_name = rs.getString("item_name");
-            float item_price = rs.getFloat("item_price");
-            float longitude = rs.getFloat("longitude");
-            float latitude = rs.getFloat("latitude");
-            float discount = rs.getFloat("discount");
-            String color = rs.getString("color");
-            String brand_name = rs.getString("brand_name");
-            String category_name = rs.getString("category_name");
-
-            data.put("id", id);
-            data.put("contract_price", contract_price);
-            data.put("state", state);
-            data.put("sign_day", sign_day);
-            data.put("sales_staff_name", sales_staff_name);
-            data.put("sales_staff_gender", sales_staff_gender);
-            data.put("customer_name", customer_name);
-            data.put("customer_gender", customer_gender);
-            data.put("customer_city", customer_city);
-            data.put("customer_city_full", customer_city_full);
-            data.put("customer_province", customer_province);
-            data.put("customer_province_full", customer_province_full);
-            data.put("dayofweek", dayofweek);
-            data.put("weekofyear", weekofyear);
-            data.put("month", month);
-            data.put("dayofmonth", dayofmonth);
-            data.put("quarter", quarter);
-            data.put("year", year);
-            data.put("dayofyear", dayofyear);
-            data.put("contract_detail_price", contract_detail_price);
-            data.put("item_quantity", item_quantity);
-            data.put("item_name", item_name);
-            data.put("item_price", item_price);
-            data.put("discount", discount);
-            data.put("color", color);
-            data.put("brand_name", brand_name);
-            data.put("category_name", category_name);
-            Map<String, Float> location = new HashMap<>();
-            location.put("lon", longitude);
-            location.put("lat", latitude);
-            data.put("geo_location", location);
-        }catch (Exception e){
-            LOGGER.error("获取数据异常", e);
+    protected void encode(ResultSet rs, NdjsonEncoder doc) throws SQLException {
+        String sign_day = rs.getString("sign_day");
+        doc.field(CONTRACT_PRICE, rs.getFloat("contract_price"));
+        doc.field(STATE, rs.getString("state"));
+        doc.field(SIGN_DAY, sign_day.replace(" ", "T"));
+        if (dimensions != null) {
+            dimensions.writeSalesStaff(doc, rs.getInt("sales_staff_id"));
+            dimensions.writeCustomer(doc, rs.getInt("customer_id"));
+            dimensions.writeDay(doc, sign_day);
+            doc.field(CONTRACT_DETAIL_PRICE, rs.getFloat("detail_price"));
+            doc.field(ITEM_QUANTITY, rs.getFloat("item_quantity"));
+            dimensions.writeItem(doc, rs.getInt("item_id"));
+            return;
         }
-        return data;
+        doc.field(Dimensions.SALES_STAFF_NAME, rs.getString("sales_staff_name"));
+        doc.field(Dimensions.SALES_STAFF_GENDER, rs.getString("sales_staff_gender"));
+        doc.field(Dimensions.CUSTOMER_NAME, rs.getString("customer_name"));
+        doc.field(Dimensions.CUSTOMER_GENDER, rs.getString("customer_gender"));
+        doc.field(Dimensions.CUSTOMER_CITY, rs.getString("customer_city"));
+        doc.field(Dimensions.CUSTOMER_CITY_FULL, rs.getString("customer_city_full"));
+        doc.field(Dimensions.CUSTOMER_PROVINCE, rs.getString("customer_province"));
+        doc.field(Dimensions.CUSTOMER_PROVINCE_FULL, rs.getString("customer_province_full"));
+        doc.field(Dimensions.DAYOFWEEK, rs.getInt("dayofweek"));
+        doc.field(Dimensions.WEEKOFYEAR, rs.getInt("weekofyear"));
+        doc.field(Dimensions.MONTH, rs.getInt("month"));
+        doc.field(Dimensions.DAYOFMONTH, rs.getInt("dayofmonth"));
+        doc.field(Dimensions.QUARTER, rs.getInt("quarter"));
+        doc.field(Dimensions.YEAR, rs.getInt("year"));
+        doc.field(Dimensions.DAYOFYEAR, rs.getInt("dayofyear"));
+        doc.field(CONTRACT_DETAIL_PRICE, rs.getFloat("contract_detail_price"));
+        doc.field(ITEM_QUANTITY, rs.getFloat("item_quantity"));
+        doc.field(Dimensions.ITEM_NAME, rs.getString("item_name"));
+        doc.field(Dimensions.ITEM_PRICE, rs.getFloat("item_price"));
+        doc.field(Dimensions.DISCOUNT, rs.getFloat("discount"));
+        doc.field(Dimensions.COLOR, rs.getString("color"));
+        doc.field(Dimensions.BRAND_NAME, rs.getString("brand_name"));
+        doc.field(Dimensions.CATEGORY_NAME, rs.getString("category_name"));
+        doc.geo(rs.getFloat("longitude"), rs.getFloat("latitude"));
     }
 
     @Override
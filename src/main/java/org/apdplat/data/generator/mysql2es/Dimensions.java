@@ -0,0 +1,260 @@
+package org.apdplat.data.generator.mysql2es;
+
+import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.apdplat.data.generator.utils.Config;
+import org.apdplat.data.generator.utils.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 导出合同及合同明细时在内存中关联的维度数据, 配置项output.join=memory时使用(默认mysql, 由MySQL做多表关联)
+ * 区域、客户、销售、商品、品牌、类别按id放在数组中, id即下标, 只加载一次, 导出时事实表只查自己的列, 在Java中关联
+ * 天维度的属性直接由sign_day计算, 算法和DayDimensionGenerator相同, 不需要关联day_dimension
+ * 关联不到的维度(比如批量导入模式下没有外键约束)输出空值, 而不是像内连接那样丢掉这一行
+ */
+class Dimensions {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Dimensions.class);
+
+    static final String MYSQL = "mysql";
+    static final String MEMORY = "memory";
+
+    private static volatile Dimensions instance;
+
+    // 合同及合同明细文档中来自维度表的字段名, 用MySQL关联时也使用
+    static final byte[] SALES_STAFF_NAME = NdjsonEncoder.name("sales_staff_name");
+    static final byte[] SALES_STAFF_GENDER = NdjsonEncoder.name("sales_staff_gender");
+    static final byte[] CUSTOMER_NAME = NdjsonEncoder.name("customer_name");
+    static final byte[] CUSTOMER_GENDER = NdjsonEncoder.name("customer_gender");
+    static final byte[] CUSTOMER_CITY = NdjsonEncoder.name("customer_city");
+    static final byte[] CUSTOMER_CITY_FULL = NdjsonEncoder.name("customer_city_full");
+    static final byte[] CUSTOMER_PROVINCE = NdjsonEncoder.name("customer_province");
+    static final byte[] CUSTOMER_PROVINCE_FULL = NdjsonEncoder.name("customer_province_full");
+    static final byte[] DAYOFWEEK = NdjsonEncoder.name("dayofweek");
+    static final byte[] WEEKOFYEAR = NdjsonEncoder.name("weekofyear");
+    static final byte[] MONTH = NdjsonEncoder.name("month");
+    static final byte[] DAYOFMONTH = NdjsonEncoder.name("dayofmonth");
+    static final byte[] QUARTER = NdjsonEncoder.name("quarter");
+    static final byte[] YEAR = NdjsonEncoder.name("year");
+    static final byte[] DAYOFYEAR = NdjsonEncoder.name("dayofyear");
+    static final byte[] ITEM_NAME = NdjsonEncoder.name("item_name");
+    static final byte[] ITEM_PRICE = NdjsonEncoder.name("item_price");
+    static final byte[] DISCOUNT = NdjsonEncoder.name("discount");
+    static final byte[] COLOR = NdjsonEncoder.name("color");
+    static final byte[] BRAND_NAME = NdjsonEncoder.name("brand_name");
+    static final byte[] CATEGORY_NAME = NdjsonEncoder.name("category_name");
+    private static final byte[] MISSING = NdjsonEncoder.value(null);
+
+    // 字符串都是预先编码好的JSON值, 输出时直接复制字节
+    private byte[][] areaCity;
+    private byte[][] areaCityFull;
+    private byte[][] areaProvince;
+    private byte[][] areaProvinceFull;
+    private float[] areaLongitude;
+    private float[] areaLatitude;
+    private int[] customerArea;
+    private byte[][] customerName;
+    private byte[][] customerGender;
+    private byte[][] salesStaffName;
+    private byte[][] salesStaffGender;
+    private byte[][] itemName;
+    private float[] itemPrice;
+    private float[] itemDiscount;
+    private byte[][] itemColor;
+    private int[] itemBrand;
+    private int[] itemCategory;
+    private byte[][] brandName;
+    private byte[][] categoryName;
+    // sign_day -> {dayofweek, weekofyear, month, dayofmonth, quarter, year, dayofyear}
+    private final Map<String, int[]> days = new ConcurrentHashMap<>();
+    // 加载时使用, 取值很少的列相同的字符串只编码一次
+    private final Map<String, byte[]> shared = new HashMap<>();
+
+    private Dimensions() {
+    }
+
+    static boolean isEnabled() {
+        return MEMORY.equals(Config.getStringValue("output.join", MYSQL));
+    }
+
+    /**
+     * 第一次调用时加载, 之后合同和合同明细共用, 加载失败时返回null
+     */
+    static Dimensions get() {
+        Dimensions dimensions = instance;
+        if (dimensions == null) {
+            synchronized (Dimensions.class) {
+                dimensions = instance;
+                if (dimensions == null) {
+                    dimensions = new Dimensions();
+                    if (!dimensions.load()) {
+                        return null;
+                    }
+                    instance = dimensions;
+                }
+            }
+        }
+        return dimensions;
+    }
+
+    private boolean load() {
+        long start = System.currentTimeMillis();
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            return false;
+        }
+        try {
+            int areas = size("area");
+            int customers = size("customer");
+            int salesStaffs = size("sales_staff");
+            int items = size("item");
+            areaCity = new byte[areas][];
+            areaCityFull = new byte[areas][];
+            areaProvince = new byte[areas][];
+            areaProvinceFull = new byte[areas][];
+            areaLongitude = new float[areas];
+            areaLatitude = new float[areas];
+            customerArea = new int[customers];
+            customerName = new byte[customers][];
+            customerGender = new byte[customers][];
+            salesStaffName = new byte[salesStaffs][];
+            salesStaffGender = new byte[salesStaffs][];
+            itemName = new byte[items][];
+            itemPrice = new float[items];
+            itemDiscount = new float[items];
+            itemColor = new byte[items][];
+            itemBrand = new int[items];
+            itemCategory = new int[items];
+            brandName = new byte[size("brand")][];
+            categoryName = new byte[size("category")][];
+            load(con, "select id, city, city_full, province, province_full, longitude, latitude from area", (id, rs) -> {
+                areaCity[id] = encode(rs.getString(2));
+                areaCityFull[id] = encode(rs.getString(3));
+                areaProvince[id] = encode(rs.getString(4));
+                areaProvinceFull[id] = encode(rs.getString(5));
+                areaLongitude[id] = rs.getFloat(6);
+                areaLatitude[id] = rs.getFloat(7);
+            });
+            load(con, "select id, name, gender, area_id from customer", (id, rs) -> {
+                customerName[id] = encode(rs.getString(2));
+                customerGender[id] = shared(rs.getString(3));
+                customerArea[id] = rs.getInt(4);
+            });
+            load(con, "select id, name, gender from sales_staff", (id, rs) -> {
+                salesStaffName[id] = encode(rs.getString(2));
+                salesStaffGender[id] = shared(rs.getString(3));
+            });
+            load(con, "select id, name, price, discount, color, brand_id, category_id from item", (id, rs) -> {
+                itemName[id] = encode(rs.getString(2));
+                itemPrice[id] = rs.getFloat(3);
+                itemDiscount[id] = rs.getFloat(4);
+                itemColor[id] = shared(rs.getString(5));
+                itemBrand[id] = rs.getInt(6);
+                itemCategory[id] = rs.getInt(7);
+            });
+            load(con, "select id, name from brand", (id, rs) -> brandName[id] = encode(rs.getString(2)));
+            load(con, "select id, name from category", (id, rs) -> categoryName[id] = encode(rs.getString(2)));
+            shared.clear();
+            LOGGER.info("维度数据加载完成, 区域数: {}, 客户数: {}, 销售数: {}, 商品数: {}, 品牌数: {}, 类别数: {}, 耗时: {}", areas - 1, customers - 1,
+                    salesStaffs - 1, items - 1, brandName.length - 1, categoryName.length - 1, TimeUtils.getTimeDes(System.currentTimeMillis() - start));
+            return true;
+        } catch (Exception e) {
+            LOGGER.error("维度数据加载失败", e);
+            return false;
+        } finally {
+            MySQLUtils.close(con);
+        }
+    }
+
+    /**
+     * 以id为下标的数组大小
+     */
+    private static int size(String table) {
+        return Math.toIntExact(MySQLUtils.getMaxId(table) + 1);
+    }
+
+    private static void load(Connection con, String sql, RowHandler handler) throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // MySQL驱动逐行流式返回结果, 不把整张表缓存在驱动里
+            pst.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(rs.getInt(1), rs);
+                }
+            }
+        }
+    }
+
+    private interface RowHandler {
+        void handle(int id, ResultSet rs) throws SQLException;
+    }
+
+    private static byte[] encode(String value) {
+        return NdjsonEncoder.value(value);
+    }
+
+    /**
+     * 性别、颜色等取值很少的列共用同一个编码结果
+     */
+    private byte[] shared(String value) {
+        return value == null ? MISSING : shared.computeIfAbsent(value, NdjsonEncoder::value);
+    }
+
+    private static byte[] at(byte[][] values, int id) {
+        return id > 0 && id < values.length && values[id] != null ? values[id] : MISSING;
+    }
+
+    void writeCustomer(NdjsonEncoder doc, int customerId) {
+        doc.field(CUSTOMER_NAME, at(customerName, customerId));
+        doc.field(CUSTOMER_GENDER, at(customerGender, customerId));
+        int areaId = customerId > 0 && customerId < customerArea.length ? customerArea[customerId] : 0;
+        doc.field(CUSTOMER_CITY, at(areaCity, areaId));
+        doc.field(CUSTOMER_CITY_FULL, at(areaCityFull, areaId));
+        doc.field(CUSTOMER_PROVINCE, at(areaProvince, areaId));
+        doc.field(CUSTOMER_PROVINCE_FULL, at(areaProvinceFull, areaId));
+        boolean areaFound = areaId > 0 && areaId < areaLongitude.length;
+        doc.geo(areaFound ? areaLongitude[areaId] : 0, areaFound ? areaLatitude[areaId] : 0);
+    }
+
+    void writeSalesStaff(NdjsonEncoder doc, int salesStaffId) {
+        doc.field(SALES_STAFF_NAME, at(salesStaffName, salesStaffId));
+        doc.field(SALES_STAFF_GENDER, at(salesStaffGender, salesStaffId));
+    }
+
+    void writeItem(NdjsonEncoder doc, int itemId) {
+        boolean found = itemId > 0 && itemId < itemPrice.length;
+        doc.field(ITEM_NAME, at(itemName, itemId));
+        doc.field(ITEM_PRICE, found ? itemPrice[itemId] : 0);
+        doc.field(DISCOUNT, found ? itemDiscount[itemId] : 0);
+        doc.field(COLOR, at(itemColor, itemId));
+        doc.field(BRAND_NAME, at(brandName, found ? itemBrand[itemId] : 0));
+        doc.field(CATEGORY_NAME, at(categoryName, found ? itemCategory[itemId] : 0));
+    }
+
+    /**
+     * @param signDay yyyy-MM-dd HH:mm:ss
+     */
+    void writeDay(NdjsonEncoder doc, String signDay) {
+        int[] day = days.computeIfAbsent(signDay, key -> {
+            LocalDate date = LocalDate.parse(key.substring(0, 10));
+            int dayofyear = date.getDayOfYear();
+            int month = date.getMonthValue();
+            return new int[]{date.getDayOfWeek().getValue(), ((dayofyear - 1) / 7) + 1, month, date.getDayOfMonth(), ((month - 1) / 3) + 1, date.getYear(), dayofyear};
+        });
+        doc.field(DAYOFWEEK, day[0]);
+        doc.field(WEEKOFYEAR, day[1]);
+        doc.field(MONTH, day[2]);
+        doc.field(DAYOFMONTH, day[3]);
+        doc.field(QUARTER, day[4]);
+        doc.field(YEAR, day[5]);
+        doc.field(DAYOFYEAR, day[6]);
+    }
+}
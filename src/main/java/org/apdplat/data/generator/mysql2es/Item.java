@@ -5,8 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.ResultSet;
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.SQLException;
 
 /**
  * Created by ysc on 20/04/2018.
@@ -16,6 +15,8 @@ public class Item extends Output{
 
     private static final String INDEX = "item";
     private static final String TYPE = "item";
+    private static final byte[] NAME = NdjsonEncoder.name("name");
+    private static final byte[] PRICE = NdjsonEncoder.name("price");
 
     private void generateCommand() {
         String sql = "select id, name, price from  item";
@@ -23,20 +24,9 @@ public class Item extends Output{
     }
 
     @Override
-    protected Map<String, Object> getRow(ResultSet rs){
-        Map<String, Object> data = new HashMap<>();
-        try {
-            int id = rs.getInt("id");
-            String name = rs.getString("name");
-            Float price = rs.getFloat("price");
-
-            data.put("id", id);
-            data.put("name", name);
-            data.put("price", price);
-        }catch (Exception e){
-            LOGGER.error("获取数据异常", e);
-        }
-        return data;
+    protected void encode(ResultSet rs, NdjsonEncoder doc) throws SQLException {
+        doc.field(NAME, rs.getString("name"));
+        doc.field(PRICE, rs.getFloat("price"));
     }
 
     @Override
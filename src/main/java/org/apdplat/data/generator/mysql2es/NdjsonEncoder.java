@@ -0,0 +1,251 @@
+package org.apdplat.data.generator.mysql2es;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 把导出的文档直接编码成ES bulk请求的NDJSON(UTF-8字节), 每个读取线程一个, 缓冲区在批次之间重复使用
+ * 每个文档两行: {"index":{"_id":"id"}} 和文档本身, 字段名预先编码, 数值直接写成十进制字符
+ * 不再为每行创建Map、包装类型, 也不需要fastjson或者IndexRequest再序列化一次
+ * 字符串中的单引号写成转义形式, es.mode=file时生成的curl -d '...'命令不会被截断
+ */
+class NdjsonEncoder {
+    private static final byte[] ACTION_START = ascii("{\"index\":{\"_id\":\"");
+    private static final byte[] ACTION_END = ascii("\"}}\n{");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] HEX = ascii("0123456789abcdef");
+    private static final byte[] ID = name("id");
+    private static final byte[] GEO_LOCATION = name("geo_location");
+    private static final byte[] LON = name("lon");
+    private static final byte[] LAT = name("lat");
+
+    private byte[] buffer = new byte[64 * 1024];
+    private int length;
+    private int documents;
+    // 当前文档在缓冲区中的起始位置, 编码失败时丢弃这个文档
+    private int documentStart;
+    // 当前的对象还没有字段, 下一个字段前面不需要逗号
+    private boolean first;
+    private final byte[] digits = new byte[20];
+
+    /**
+     * 预先编码的字段名, 包括引号和冒号
+     */
+    static byte[] name(String name) {
+        NdjsonEncoder encoder = new NdjsonEncoder();
+        encoder.writeString(name);
+        encoder.write((byte) ':');
+        return Arrays.copyOf(encoder.buffer, encoder.length);
+    }
+
+    /**
+     * 预先编码的字符串值, 包括引号, null编码为null
+     */
+    static byte[] value(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        NdjsonEncoder encoder = new NdjsonEncoder();
+        encoder.writeString(value);
+        return Arrays.copyOf(encoder.buffer, encoder.length);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 开始一个文档, 写入动作行及id字段
+     */
+    void begin(int id) {
+        documentStart = length;
+        write(ACTION_START);
+        writeLong(id);
+        write(ACTION_END);
+        first = true;
+        field(ID, id);
+    }
+
+    void end() {
+        ensure(2);
+        buffer[length++] = '}';
+        buffer[length++] = '\n';
+        documents++;
+    }
+
+    /**
+     * 丢弃没有写完的文档
+     */
+    void discard() {
+        length = documentStart;
+    }
+
+    void field(byte[] name, String value) {
+        writeName(name);
+        if (value == null) {
+            write(NULL);
+        } else {
+            writeString(value);
+        }
+    }
+
+    void field(byte[] name, int value) {
+        writeName(name);
+        writeLong(value);
+    }
+
+    void field(byte[] name, float value) {
+        writeName(name);
+        writeFloat(value);
+    }
+
+    /**
+     * @param encodedValue value(String)预先编码的值
+     */
+    void field(byte[] name, byte[] encodedValue) {
+        writeName(name);
+        write(encodedValue);
+    }
+
+    /**
+     * "geo_location":{"lon":经度,"lat":纬度}
+     */
+    void geo(float longitude, float latitude) {
+        writeName(GEO_LOCATION);
+        write((byte) '{');
+        first = true;
+        field(LON, longitude);
+        field(LAT, latitude);
+        write((byte) '}');
+        first = false;
+    }
+
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    int getDocuments() {
+        return documents;
+    }
+
+    void reset() {
+        length = 0;
+        documents = 0;
+    }
+
+    private void writeName(byte[] name) {
+        if (first) {
+            first = false;
+        } else {
+            write((byte) ',');
+        }
+        write(name);
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(ascii(Long.toString(value)));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (count > 0) {
+            buffer[length++] = digits[--count];
+        }
+    }
+
+    /**
+     * 最多两位小数(价格、经纬度等decimal(10, 2)的列)时直接写, 解析后和Float.toString得到同一个float, 其它情况使用Float.toString
+     */
+    private void writeFloat(float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            write(NULL);
+            return;
+        }
+        if (Math.abs(value) < 1e7f) {
+            long cents = Math.round(value * 100.0);
+            if ((float) (cents / 100.0) == value) {
+                if (cents < 0) {
+                    write((byte) '-');
+                    cents = -cents;
+                }
+                writeLong(cents / 100);
+                write((byte) '.');
+                long fraction = cents % 100;
+                write((byte) ('0' + fraction / 10));
+                if (fraction % 10 != 0) {
+                    write((byte) ('0' + fraction % 10));
+                }
+                return;
+            }
+        }
+        write(ascii(Float.toString(value)));
+    }
+
+    private void writeString(String value) {
+        // 每个字符最多编码成6个字节(控制字符及单引号写成6个字节的转义)
+        ensure(value.length() * 6 + 2);
+        buffer[length++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buffer[length++] = '\\';
+                    buffer[length++] = (byte) c;
+                } else if (c < 0x20 || c == '\'') {
+                    buffer[length++] = '\\';
+                    buffer[length++] = 'u';
+                    buffer[length++] = '0';
+                    buffer[length++] = '0';
+                    buffer[length++] = HEX[c >> 4];
+                    buffer[length++] = HEX[c & 0xF];
+                } else {
+                    buffer[length++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buffer[length++] = '"';
+    }
+
+    private void write(byte b) {
+        ensure(1);
+        buffer[length++] = b;
+    }
+
+    private void write(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void ensure(int size) {
+        if (length + size > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + size));
+        }
+    }
+}
@@ -1,33 +1,27 @@
 package org.apdplat.data.generator.mysql2es;
 
-import com.alibaba.fastjson.JSON;
 import org.apdplat.data.generator.mysql.MySQLUtils;
 import org.apdplat.data.generator.utils.Config;
 import org.apache.http.HttpHost;
-import org.elasticsearch.action.bulk.BulkItemResponse;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -42,180 +36,168 @@ public abstract class Output {
     protected static final int BATCH_SIZE = Config.getIntValue("es.batchSize") == -1 ? 5 : Config.getIntValue("es.batchSize");
     private static final int MYSQL_PAGE_SIZE = Config.getIntValue("mysql.pageSize") == -1 ? 1000 : Config.getIntValue("mysql.pageSize");
     protected static final int START_PAGE = Config.getIntValue("output.start.page") == -1 ? 0 : Config.getIntValue("output.start.page");
+    // 从哪个id之后开始导出, 只有一个读取线程时可以用日志中最后的id继续, 没有配置时兼容以前的output.start.page
+    private static final long START_ID = Config.getLongValue("output.start.id", (long) START_PAGE * MYSQL_PAGE_SIZE);
     protected static final String ASYNC_OUTPUT = Config.getStringValue("output.async") == null ? "true" : Config.getStringValue("output.async");
     private static final int THREAD_COUNT = Config.getIntValue("output.async.thread.count") == -1 ? 1 : Config.getIntValue("output.async.thread.count");
-    private static final ExecutorService EXECUTOR_SERVICE = Executors.newCachedThreadPool();
-    private static final BlockingQueue<Map<String, Object>> BLOCKING_QUEUE = new LinkedBlockingQueue<>(THREAD_COUNT);
-    private static volatile boolean running = true;
+    // 每批的字节数上限, 和文档数上限es.batchSize哪个先到就发送
+    private static final long BATCH_BYTES = Config.getLongValue("es.batchSizeMB", 5) * 1024 * 1024;
+    private static final int CONCURRENT_REQUESTS = Config.getIntValue("es.bulk.concurrentRequests", "true".equalsIgnoreCase(ASYNC_OUTPUT) ? THREAD_COUNT : 0);
 
     private static final AtomicLong COUNT = new AtomicLong();
+    // 导出不完整的索引, 全部导出结束时由Index报告
+    private static final Set<String> FAILED_INDICES = ConcurrentHashMap.newKeySet();
+    private static final byte[] END_OF_COMMAND = "';\n".getBytes(StandardCharsets.UTF_8);
 
     private static final RestHighLevelClient CLIENT = new RestHighLevelClient(
             RestClient.builder(
                     new HttpHost(HOST, Integer.parseInt(PORT), "http")));
 
-    static {
-        if (!"file".equals(MODE) && "true".equalsIgnoreCase(ASYNC_OUTPUT)) {
-            for (int i = 0; i < THREAD_COUNT; i++) {
-                EXECUTOR_SERVICE.submit(() -> {
-                    while (running) {
-                        try {
-                            Map<String, Object> map = BLOCKING_QUEUE.take();
-                            if (map.get("data") == null) {
-                                running = false;
-                                break;
-                            }
-                            List<Map<String, Object>> data = (List<Map<String, Object>>) map.get("data");
-                            String index = (String) map.get("index");
-                            String type = (String) map.get("type");
-                            output(index, type, null, data);
-                        } catch (Exception e) {
-                            LOGGER.error("获取数据异常", e);
-                        }
-                    }
-                });
-            }
-        }
+    public static Set<String> getFailedIndices() {
+        return FAILED_INDICES;
     }
 
-    protected void writeBatch(String index, String type, BufferedWriter bufferedWriter, List<Map<String, Object>> list) throws Exception{
-        if("true".equalsIgnoreCase(ASYNC_OUTPUT)){
-            List<Map<String, Object>> newList = new ArrayList<>(list.size());
-            newList.addAll(list);
-            Map<String, Object> map = new HashMap<>();
-            map.put("data", newList);
-            map.put("index", index);
-            map.put("type", type);
-            BLOCKING_QUEUE.put(map);
-            list.clear();
-        }else{
-            output(index, type, bufferedWriter, list);
+    /**
+     * 输出encoder中已经编码的文档, 之后清空encoder重复使用
+     * @param indexer es.mode=file时为null, 写入脚本文件
+     */
+    protected void writeBatch(String index, String type, OutputStream out, BulkIndexer indexer, NdjsonEncoder encoder) throws Exception{
+        if (encoder.getDocuments() == 0) {
+            return;
+        }
+        if (indexer == null) {
+            writeBatchToFile(index, type, out, encoder.getBuffer(), encoder.getLength());
+        } else {
+            indexer.add(encoder);
         }
+        encoder.reset();
     }
 
-    private static void output(String index, String type, BufferedWriter bufferedWriter, List<Map<String, Object>> list) {
-        try {
-            if ("file".equals(MODE)) {
-                writeBatchToFile(index, type, bufferedWriter, list);
-            } else {
-                writeBatchToES(index, type, list);
-            }
-            list.forEach(item -> {
-                if (item.get("geo_location") != null) {
-                    ((Map<String, Float>) item.get("geo_location")).clear();
-                }
-                item.clear();
-            });
-            list.clear();
-        }catch (Exception e){
-            LOGGER.error("数据输出异常", e);
-            throw new RuntimeException(e);
+    private static void writeBatchToFile(String index, String type, OutputStream out, byte[] data, int length) throws Exception{
+        byte[] command = ("curl -H \"Content-Type: application/json\" -XPUT 'http://"+HOST+":"+PORT+"/"+index+"/"+type+"/_bulk' -d '\n").getBytes(StandardCharsets.UTF_8);
+        // 多个读取线程共用一个脚本文件
+        synchronized (out) {
+            out.write(command);
+            out.write(data, 0, length);
+            out.write(END_OF_COMMAND);
+            out.flush();
         }
     }
 
-    private static void writeBatchToES(String index, String type, List<Map<String, Object>> list) throws Exception{
-        if(list.isEmpty()){
+    /**
+     * 把表中实际的(min(id) - 1, max(id)]按读取线程数等分成多个范围, 每个范围一个线程、一个连接并行读取和转换,
+     * 转换好的批次交给同一个输出阶段(脚本文件或者BulkIndexer)
+     * 读取线程数由output.readers.索引名或者output.readers指定, 默认1
+     */
+    protected void generateCommand(String table, String sql, String index, String type, String shellFileName) {
+        long[] idRange = MySQLUtils.getIdRange(table);
+        if (idRange == null) {
+            LOGGER.info("表 {} 没有数据", table);
             return;
         }
-        BulkRequest request = new BulkRequest();
-        for(Map<String, Object> data : list) {
-            String id = data.get("id").toString();
-            request.add(
-                    new IndexRequest(index, type, id)
-                            .source(data));
-
+        long from = Math.max(idRange[0] - 1, START_ID);
+        long to = idRange[1];
+        int readers = Math.min(MySQLUtils.MAX_CONNECTIONS, Math.max(1, Config.getIntValue("output.readers." + index, Config.getIntValue("output.readers", 1))));
+        if (to - from < readers) {
+            readers = (int) Math.max(1, to - from);
         }
-        BulkResponse bulkResponse = CLIENT.bulk(request);
-        if (bulkResponse.hasFailures()) {
-            for (BulkItemResponse bulkItemResponse : bulkResponse) {
-                if (bulkItemResponse.isFailed()) {
-                    BulkItemResponse.Failure failure = bulkItemResponse.getFailure();
-                    LOGGER.error("ES索引失败: {}", failure.getMessage());
+        AtomicBoolean complete = new AtomicBoolean(true);
+        try(OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(shellFileName)));
+            BulkIndexer indexer = "file".equals(MODE) ? null : new BulkIndexer(CLIENT, index, type, CONCURRENT_REQUESTS)) {
+            String join = sql.contains("where") ? " and " : " where ";
+            String sqlWithPage = sql + join + table + ".id > ? and " + table + ".id <= ? order by " + table + ".id limit " + MYSQL_PAGE_SIZE;
+            LOGGER.info("开始查询, id范围: {} - {}, 读取线程数: {}, 页面大小: {}, SQL: {}", from + 1, to, readers, MYSQL_PAGE_SIZE, sqlWithPage);
+            if (readers == 1) {
+                readRange(index, type, sqlWithPage, from, to, out, indexer, complete);
+            } else {
+                List<Thread> threads = new ArrayList<>();
+                for (int i = 0; i < readers; i++) {
+                    long rangeStart = from + (to - from) * i / readers;
+                    long rangeEnd = from + (to - from) * (i + 1) / readers;
+                    Thread thread = new Thread(() -> readRange(index, type, sqlWithPage, rangeStart, rangeEnd, out, indexer, complete), index + "-reader-" + i);
+                    thread.start();
+                    threads.add(thread);
+                }
+                for (Thread thread : threads) {
+                    thread.join();
                 }
             }
+            out.flush();
+        } catch (Exception e) {
+            complete.set(false);
+            LOGGER.error("索引 {} 导出失败", index, e);
         }
-    }
-
-    private static void writeBatchToFile(String index, String type, BufferedWriter bufferedWriter, List<Map<String, Object>> list) throws Exception{
-        StringBuilder batchJson = new StringBuilder();
-        for(Map<String, Object> data : list) {
-            String json = JSON.toJSONString(data);
-            String id = data.get("id").toString();
-            batchJson.append("\n{ \"index\":{ \"_id\": \""+id+"\"} }\n").append(json).append("\n");
+        if (!complete.get()) {
+            FAILED_INDICES.add(index);
+            LOGGER.error("索引 {} 导出不完整", index);
         }
-
-        String command = "curl -H \"Content-Type: application/json\" -XPUT 'http://"+HOST+":"+PORT+"/"+index+"/"+type+"/_bulk' -d '"+batchJson.toString()+"';";
-
-        bufferedWriter.write(command+"\n");
-        bufferedWriter.flush();
     }
 
-    protected void generateCommand(String table, String sql, String index, String type, String shellFileName) {
+    /**
+     * 用一个连接按id做键集分页读取(from, to]: 只准备一条语句, 每页用上一页最后一个id作为参数
+     * 查询次数只和实际的行数有关, id不连续(删除过数据、实时生成的id稀疏)时也不会出现空页或者漏掉数据
+     * @param complete 这个范围没有读完时设为false
+     */
+    private void readRange(String index, String type, String sql, long from, long to, OutputStream out, BulkIndexer indexer, AtomicBoolean complete) {
         Connection con = MySQLUtils.getConnection();
         if(con == null){
+            complete.set(false);
             return ;
         }
         PreparedStatement pst = null;
         ResultSet rs = null;
-        List<Map<String, Object>> list = new ArrayList<>();
-        try(BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(shellFileName)), "utf-8"))) {
-            int count = MySQLUtils.getCount(table);
-            int page = count / MYSQL_PAGE_SIZE;
-            if(count % MYSQL_PAGE_SIZE > 0){
-                page++;
-            }
-            LOGGER.info("表纪录数量: {}, 页面大小: {}, 总页数: {}", count, MYSQL_PAGE_SIZE, page);
-            for(int i=START_PAGE; i<page; i++) {
-                String join = "";
-                if(sql.contains("where")){
-                    join = " and ";
-                }else{
-                    join = " where ";
+        NdjsonEncoder encoder = new NdjsonEncoder();
+        long lastId = from;
+        int pages = 0;
+        try {
+            pst = con.prepareStatement(sql);
+            pst.setLong(2, to);
+            while (true) {
+                pst.setLong(1, lastId);
+                rs = pst.executeQuery();
+                int rows = 0;
+                while (rs.next()) {
+                    lastId = rs.getLong("id");
+                    rows++;
+                    encoder.begin(rs.getInt("id"));
+                    try {
+                        encode(rs, encoder);
+                        encoder.end();
+                    } catch (Exception e) {
+                        encoder.discard();
+                        complete.set(false);
+                        LOGGER.error("获取数据异常, id: {}", lastId, e);
+                        continue;
+                    }
+                    if(COUNT.incrementAndGet() % 1000 == 0) {
+                        LOGGER.info("已写: {}", COUNT.get());
+                    }
+                    if(encoder.getDocuments() >= BATCH_SIZE || encoder.getLength() >= BATCH_BYTES) {
+                        writeBatch(index, type, out, indexer, encoder);
+                    }
                 }
-                String sqlWithPage = sql + join + table + ".id > " + i*MYSQL_PAGE_SIZE + " and " + table +".id <= " + (i*MYSQL_PAGE_SIZE + MYSQL_PAGE_SIZE) +  ";";
-                processPage(index, type, sqlWithPage, bufferedWriter, con, pst, rs, list);
-            }
-            writeBatch(index, type, bufferedWriter, list);
-            bufferedWriter.flush();
-            if (!"file".equals(MODE)) {
-                for (int i = 0; i < THREAD_COUNT; i++) {
-                    Map<String, Object> map = new HashMap<>();
-                    map.put("data", null);
-                    map.put("index", null);
-                    map.put("type", null);
-                    BLOCKING_QUEUE.put(map);
+                rs.close();
+                rs = null;
+                pages++;
+                if (rows < MYSQL_PAGE_SIZE) {
+                    break;
                 }
+                LOGGER.debug("第 {} 页处理完成, 最后的id: {}", pages, lastId);
             }
+            writeBatch(index, type, out, indexer, encoder);
+            LOGGER.info("范围 {} - {} 查询结束, 页数: {}, 最后的id: {}", from + 1, to, pages, lastId);
         } catch (Exception e) {
-            LOGGER.error("查询失败", e);
+            complete.set(false);
+            LOGGER.error("范围 {} - {} 查询失败, 最后的id: {}", from + 1, to, lastId, e);
         } finally {
             MySQLUtils.close(con, pst, rs);
         }
     }
 
-    private void processPage(String index, String type, String sql, BufferedWriter bufferedWriter, Connection con, PreparedStatement pst, ResultSet rs, List<Map<String, Object>> list){
-        try {
-            LOGGER.info("开始查询, SQL: {}", sql);
-            pst = con.prepareStatement(sql);
-            rs = pst.executeQuery();
-            LOGGER.info("查询结束, 开始处理数据");
-            while (rs.next()) {
-                Map<String, Object> row = getRow(rs);
-                list.add(row);
-                COUNT.incrementAndGet();
-                if(COUNT.get() % 1000 == 0) {
-                    LOGGER.info("已写: {}", COUNT.get());
-                }
-                if(list.size() % BATCH_SIZE == 0) {
-                    writeBatch(index, type, bufferedWriter, list);
-                }
-            }
-        }catch (Exception e){
-            LOGGER.error("处理页面异常", e);
-        }
-    }
-
-    protected abstract Map<String, Object> getRow(ResultSet rs);
+    /**
+     * 把当前行的字段写入doc, id字段已经由begin写入
+     */
+    protected abstract void encode(ResultSet rs, NdjsonEncoder doc) throws SQLException;
 
     public abstract void run();
 }
@@ -5,8 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.ResultSet;
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.SQLException;
 
 /**
  * Created by ysc on 20/04/2018.
@@ -16,6 +15,12 @@ public class SalesStaff extends Output{
 
     private static final String INDEX = "sales_staff";
     private static final String TYPE = "sales_staff";
+    private static final byte[] NAME = NdjsonEncoder.name("name");
+    private static final byte[] GENDER = NdjsonEncoder.name("gender");
+    private static final byte[] CITY = NdjsonEncoder.name("city");
+    private static final byte[] CITY_FULL = NdjsonEncoder.name("city_full");
+    private static final byte[] PROVINCE = NdjsonEncoder.name("province");
+    private static final byte[] PROVINCE_FULL = NdjsonEncoder.name("province_full");
 
     private void generateCommand() {
         String sql = "select sales_staff.id, sales_staff.name, sales_staff.gender, area.city, area.city_full, area.province, area.province_full, area.longitude, area.latitude from area, sales_staff where sales_staff.area_id=area.id";
@@ -23,34 +28,14 @@ public class SalesStaff extends Output{
     }
 
     @Override
-    protected Map<String, Object> getRow(ResultSet rs){
-        Map<String, Object> data = new HashMap<>();
-        try {
-            int id = rs.getInt("id");
-            String name = rs.getString("name");
-            String gender = rs.getString("gender");
-            String city = rs.getString("city");
-            String city_full = rs.getString("city_full");
-            String province = rs.getString("province");
-            String province_full = rs.getString("province_full");
-            Float longitude = rs.getFloat("longitude");
-            Float latitude = rs.getFloat("latitude");
-
-            data.put("id", id);
-            data.put("name", name);
-            data.put("gender", gender);
-            data.put("city", city);
-            data.put("city_full", city_full);
-            data.put("province", province);
-            data.put("province_full", province_full);
-            Map<String, Float> location = new HashMap<>();
-            location.put("lon", longitude);
-            location.put("lat", latitude);
-            data.put("geo_location", location);
-        }catch (Exception e){
-            LOGGER.error("获取数据异常", e);
-        }
-        return data;
+    protected void encode(ResultSet rs, NdjsonEncoder doc) throws SQLException {
+        doc.field(NAME, rs.getString("name"));
+        doc.field(GENDER, rs.getString("gender"));
+        doc.field(CITY, rs.getString("city"));
+        doc.field(CITY_FULL, rs.getString("city_full"));
+        doc.field(PROVINCE, rs.getString("province"));
+        doc.field(PROVINCE_FULL, rs.getString("province_full"));
+        doc.geo(rs.getFloat("longitude"), rs.getFloat("latitude"));
     }
 
     @Override
@@ -0,0 +1,158 @@
+package org.apdplat.data.generator.realtime;
+
+import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实时生成订单时使用的维度缓存
+ * 商品价格放在以商品id为下标的float数组中, 有效的商品、客户、销售id放在int数组中
+ * 生成订单时不再需要查询数据库, 定时在后台重新加载, 加载完成后整体替换
+ */
+public class DimensionCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DimensionCache.class);
+
+    private volatile Snapshot snapshot = new Snapshot(new float[0], new int[0], new int[0], new int[0]);
+    private ScheduledExecutorService scheduler;
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void load() {
+        long start = System.currentTimeMillis();
+        Connection con = MySQLUtils.getConnection();
+        if (con == null) {
+            return;
+        }
+        try {
+            int[] itemIds = new int[1024];
+            float[] prices = new float[1024];
+            int itemCount = 0;
+            int maxItemId = 0;
+            try (PreparedStatement pst = streaming(con, "select id, price from item");
+                 ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    if (itemCount == itemIds.length) {
+                        itemIds = Arrays.copyOf(itemIds, itemCount * 2);
+                        prices = Arrays.copyOf(prices, itemCount * 2);
+                    }
+                    itemIds[itemCount] = rs.getInt(1);
+                    prices[itemCount] = rs.getFloat(2);
+                    maxItemId = Math.max(maxItemId, itemIds[itemCount]);
+                    itemCount++;
+                }
+            }
+            itemIds = Arrays.copyOf(itemIds, itemCount);
+            float[] itemPrices = new float[maxItemId + 1];
+            for (int i = 0; i < itemCount; i++) {
+                itemPrices[itemIds[i]] = prices[i];
+            }
+            int[] customerIds = loadIds(con, "select id from customer");
+            int[] salesStaffIds = loadIds(con, "select id from sales_staff");
+            snapshot = new Snapshot(itemPrices, itemIds, customerIds, salesStaffIds);
+            LOGGER.info("维度缓存加载完成, 商品数: {}, 客户数: {}, 销售数: {}, 耗时: {}毫秒",
+                    itemIds.length, customerIds.length, salesStaffIds.length, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            LOGGER.error("维度缓存加载失败, 继续使用上一次的数据", e);
+        } finally {
+            MySQLUtils.close(con);
+        }
+    }
+
+    /**
+     * 每隔refreshSeconds秒在后台重新加载一次
+     */
+    public void startRefresh(int refreshSeconds) {
+        if (refreshSeconds <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dimension-cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::load, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static PreparedStatement streaming(Connection con, String sql) throws Exception {
+        PreparedStatement pst = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        // MySQL驱动逐行返回结果, 避免一次性把结果集读入内存
+        pst.setFetchSize(Integer.MIN_VALUE);
+        return pst;
+    }
+
+    private static int[] loadIds(Connection con, String sql) throws Exception {
+        int[] ids = new int[1024];
+        int size = 0;
+        try (PreparedStatement pst = streaming(con, sql);
+             ResultSet rs = pst.executeQuery()) {
+            while (rs.next()) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size++] = rs.getInt(1);
+            }
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * 某一次加载的结果, 加载后不再修改, 可以被多个线程同时读取
+     */
+    public static class Snapshot {
+        private final float[] itemPrices;
+        private final int[] itemIds;
+        private final int[] customerIds;
+        private final int[] salesStaffIds;
+
+        Snapshot(float[] itemPrices, int[] itemIds, int[] customerIds, int[] salesStaffIds) {
+            this.itemPrices = itemPrices;
+            this.itemIds = itemIds;
+            this.customerIds = customerIds;
+            this.salesStaffIds = salesStaffIds;
+        }
+
+        public boolean isEmpty() {
+            return itemIds.length == 0 || customerIds.length == 0 || salesStaffIds.length == 0;
+        }
+
+        public float getItemPrice(int itemId) {
+            return itemPrices[itemId];
+        }
+
+        public int getItemCount() {
+            return itemIds.length;
+        }
+
+        /**
+         * 第index(从0开始)个有效的商品id
+         */
+        public int getItemId(int index) {
+            return itemIds[index];
+        }
+
+        public int randomCustomerId(Random random) {
+            return customerIds[random.nextInt(customerIds.length)];
+        }
+
+        public int randomSalesStaffId(Random random) {
+            return salesStaffIds[random.nextInt(salesStaffIds.length)];
+        }
+    }
+}
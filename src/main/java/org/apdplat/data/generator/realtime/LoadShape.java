@@ -0,0 +1,117 @@
+package org.apdplat.data.generator.realtime;
+
+import org.apdplat.data.generator.utils.Config;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+
+/**
+ * 负载形状, 给出某一时刻的目标速率(订单数/秒)
+ * 各种形状在一天(或一周)内的平均速率都等于baseRate, 保证每天的订单总数不变
+ */
+public interface LoadShape {
+
+    double rateAt(LocalDateTime time);
+
+    /**
+     * 根据名称创建负载形状, 可选值: constant, diurnal, weekly, flashsale
+     */
+    static LoadShape create(String name, double baseRate) {
+        switch (name) {
+            case "constant":
+                return new Constant(baseRate);
+            case "diurnal":
+                return new Diurnal(baseRate);
+            case "weekly":
+                return new Weekly(baseRate);
+            case "flashsale":
+                return new FlashSale(new Constant(baseRate),
+                        Config.getIntValue("realtime.flashSale.intervalMinutes", 60),
+                        Config.getIntValue("realtime.flashSale.durationSeconds", 60),
+                        Config.getIntValue("realtime.flashSale.multiplier", 10));
+            default:
+                throw new IllegalArgumentException("不支持的负载形状: " + name);
+        }
+    }
+
+    /**
+     * 恒定速率
+     */
+    class Constant implements LoadShape {
+        private final double rate;
+
+        Constant(double rate) {
+            this.rate = rate;
+        }
+
+        @Override
+        public double rateAt(LocalDateTime time) {
+            return rate;
+        }
+    }
+
+    /**
+     * 按天变化的正弦曲线, 凌晨4点最低, 下午4点最高, 振幅为平均值的80%
+     */
+    class Diurnal implements LoadShape {
+        private static final double AMPLITUDE = 0.8;
+        private final double baseRate;
+
+        Diurnal(double baseRate) {
+            this.baseRate = baseRate;
+        }
+
+        @Override
+        public double rateAt(LocalDateTime time) {
+            double hour = time.getHour() + time.getMinute() / 60.0 + time.getSecond() / 3600.0;
+            return baseRate * (1 - AMPLITUDE * Math.cos(2 * Math.PI * (hour - 4) / 24));
+        }
+    }
+
+    /**
+     * 在按天变化的基础上叠加按周变化, 周末比工作日高, 一周的平均值仍为baseRate
+     */
+    class Weekly implements LoadShape {
+        // 周一到周日的系数, 平均值为1
+        private static final double[] FACTORS = {0.9, 0.85, 0.85, 0.9, 1.0, 1.3, 1.2};
+        private final Diurnal diurnal;
+
+        Weekly(double baseRate) {
+            this.diurnal = new Diurnal(baseRate);
+        }
+
+        @Override
+        public double rateAt(LocalDateTime time) {
+            DayOfWeek dayOfWeek = time.getDayOfWeek();
+            return diurnal.rateAt(time) * FACTORS[dayOfWeek.getValue() - 1];
+        }
+    }
+
+    /**
+     * 在其它形状的基础上每隔intervalMinutes分钟出现一次持续durationSeconds秒的秒杀高峰
+     * 高峰期速率为平时的multiplier倍, 平时的速率相应降低, 保证平均值不变
+     */
+    class FlashSale implements LoadShape {
+        private final LoadShape base;
+        private final int intervalSeconds;
+        private final int durationSeconds;
+        private final double peakFactor;
+        private final double normalFactor;
+
+        FlashSale(LoadShape base, int intervalMinutes, int durationSeconds, int multiplier) {
+            this.base = base;
+            this.intervalSeconds = Math.max(1, intervalMinutes * 60);
+            this.durationSeconds = Math.min(durationSeconds, this.intervalSeconds);
+            double peakShare = (double) this.durationSeconds / this.intervalSeconds;
+            this.normalFactor = 1 / (1 + peakShare * (multiplier - 1));
+            this.peakFactor = normalFactor * multiplier;
+        }
+
+        @Override
+        public double rateAt(LocalDateTime time) {
+            int secondOfDay = time.toLocalTime().toSecondOfDay();
+            boolean peak = secondOfDay % intervalSeconds < durationSeconds;
+            return base.rateAt(time) * (peak ? peakFactor : normalFactor);
+        }
+    }
+}
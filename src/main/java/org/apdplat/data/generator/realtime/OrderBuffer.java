@@ -0,0 +1,116 @@
+package org.apdplat.data.generator.realtime;
+
+import java.util.Arrays;
+
+/**
+ * 一批订单(合同及明细), 字段都存放在基本类型数组中, 容量不够时自动扩大, 清空后可以重复使用
+ */
+public class OrderBuffer {
+    private String signDay;
+
+    private int contractCount;
+    private int[] contractIds = new int[16];
+    private float[] contractPrices = new float[16];
+    private int[] states = new int[16];
+    private int[] salesStaffIds = new int[16];
+    private int[] customerIds = new int[16];
+
+    private int detailCount;
+    private int[] detailIds = new int[64];
+    private int[] itemIds = new int[64];
+    private int[] itemQuantities = new int[64];
+    private float[] detailPrices = new float[64];
+    private int[] detailContractIds = new int[64];
+
+    public void clear(String signDay) {
+        this.signDay = signDay;
+        this.contractCount = 0;
+        this.detailCount = 0;
+    }
+
+    public void addContract(int id, float price, int state, int salesStaffId, int customerId) {
+        if (contractCount == contractIds.length) {
+            int capacity = contractCount * 2;
+            contractIds = Arrays.copyOf(contractIds, capacity);
+            contractPrices = Arrays.copyOf(contractPrices, capacity);
+            states = Arrays.copyOf(states, capacity);
+            salesStaffIds = Arrays.copyOf(salesStaffIds, capacity);
+            customerIds = Arrays.copyOf(customerIds, capacity);
+        }
+        contractIds[contractCount] = id;
+        contractPrices[contractCount] = price;
+        states[contractCount] = state;
+        salesStaffIds[contractCount] = salesStaffId;
+        customerIds[contractCount] = customerId;
+        contractCount++;
+    }
+
+    public void addDetail(int id, int itemId, int itemQuantity, float price, int contractId) {
+        if (detailCount == detailIds.length) {
+            int capacity = detailCount * 2;
+            detailIds = Arrays.copyOf(detailIds, capacity);
+            itemIds = Arrays.copyOf(itemIds, capacity);
+            itemQuantities = Arrays.copyOf(itemQuantities, capacity);
+            detailPrices = Arrays.copyOf(detailPrices, capacity);
+            detailContractIds = Arrays.copyOf(detailContractIds, capacity);
+        }
+        detailIds[detailCount] = id;
+        itemIds[detailCount] = itemId;
+        itemQuantities[detailCount] = itemQuantity;
+        detailPrices[detailCount] = price;
+        detailContractIds[detailCount] = contractId;
+        detailCount++;
+    }
+
+    public String getSignDay() {
+        return signDay;
+    }
+
+    public int getContractCount() {
+        return contractCount;
+    }
+
+    public int getContractId(int i) {
+        return contractIds[i];
+    }
+
+    public float getContractPrice(int i) {
+        return contractPrices[i];
+    }
+
+    public int getState(int i) {
+        return states[i];
+    }
+
+    public int getSalesStaffId(int i) {
+        return salesStaffIds[i];
+    }
+
+    public int getCustomerId(int i) {
+        return customerIds[i];
+    }
+
+    public int getDetailCount() {
+        return detailCount;
+    }
+
+    public int getDetailId(int i) {
+        return detailIds[i];
+    }
+
+    public int getItemId(int i) {
+        return itemIds[i];
+    }
+
+    public int getItemQuantity(int i) {
+        return itemQuantities[i];
+    }
+
+    public float getDetailPrice(int i) {
+        return detailPrices[i];
+    }
+
+    public int getDetailContractId(int i) {
+        return detailContractIds[i];
+    }
+}
@@ -0,0 +1,115 @@
+package org.apdplat.data.generator.realtime;
+
+import org.apdplat.data.generator.generator.DistinctSampler;
+import org.apdplat.data.generator.generator.IdAllocator;
+import org.apdplat.data.generator.utils.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 实时订单生产线程, 从任务队列中取出要生成的订单数, 把合同及明细生成到OrderBuffer中
+ * 每个生产线程配一个OrderWriter写入线程, 两个OrderBuffer交替使用:
+ * 生产线程填充下一批订单的同时, 写入线程提交上一批订单, 生成和IO互相重叠
+ */
+public class OrderWorker implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderWorker.class);
+    private static final int BUFFER_COUNT = 2;
+
+    private final BlockingQueue<Integer> tasks;
+    private final DimensionCache dimensionCache;
+    private final IdAllocator.IdBlock contractIds;
+    private final IdAllocator.IdBlock detailIds;
+    private final int contractDetailLimit;
+    private final int itemQuantityLimit;
+    private final DistinctSampler sampler;
+    // 选中的商品在DimensionCache中的序号加1
+    private final int[] itemIndexes;
+
+    private final BlockingQueue<OrderBuffer> free = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final BlockingQueue<OrderBuffer> filled = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final OrderWriter writer;
+
+    public OrderWorker(BlockingQueue<Integer> tasks, RateScheduler rateScheduler, DimensionCache dimensionCache,
+                       IdAllocator contractIds, IdAllocator detailIds, int contractDetailLimit, int itemQuantityLimit, int batchSize) {
+        this.tasks = tasks;
+        this.dimensionCache = dimensionCache;
+        this.contractIds = contractIds.newBlock(batchSize);
+        this.detailIds = detailIds.newBlock(batchSize * contractDetailLimit);
+        this.contractDetailLimit = contractDetailLimit;
+        this.itemQuantityLimit = itemQuantityLimit;
+        this.sampler = new DistinctSampler(contractDetailLimit);
+        this.itemIndexes = new int[contractDetailLimit];
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            free.add(new OrderBuffer());
+        }
+        this.writer = new OrderWriter(filled, free, rateScheduler);
+    }
+
+    @Override
+    public void run() {
+        Thread writerThread = new Thread(writer, Thread.currentThread().getName() + "-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        try {
+            while (true) {
+                int orderCount = tasks.take();
+                if (orderCount < 0) {
+                    break;
+                }
+                OrderBuffer buffer = free.take();
+                generateContract(orderCount, buffer);
+                filled.put(buffer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writerThread.interrupt();
+        }
+    }
+
+    private void generateContract(int orderCount, OrderBuffer buffer) {
+        String signDay = TimeUtils.toString(LocalDate.now().atStartOfDay());
+        buffer.clear(signDay);
+        DimensionCache.Snapshot dimensions = dimensionCache.getSnapshot();
+        if (dimensions.isEmpty()) {
+            LOGGER.warn("商品、客户或销售数据为空, 跳过本次生成");
+            return;
+        }
+        Random random = ThreadLocalRandom.current();
+        int itemCount = dimensions.getItemCount();
+        try {
+            generateContract(orderCount, buffer, dimensions, random, itemCount);
+        } catch (IllegalStateException e) {
+            // 服务器端分配id失败, 丢掉这一批, 下一批重新分配
+            buffer.clear(signDay);
+            LOGGER.error("分配id失败, 跳过本次生成", e);
+        }
+    }
+
+    private void generateContract(int orderCount, OrderBuffer buffer, DimensionCache.Snapshot dimensions, Random random, int itemCount) {
+        for (int i = 0; i < orderCount; i++) {
+            int contractId = contractIds.nextId();
+            int salesStaffId = dimensions.randomSalesStaffId(random);
+            int customerId = dimensions.randomCustomerId(random);
+            int state = random.nextInt(OrderWriter.STATES.size());
+            float totalPrice = 0;
+
+            int itemNum = sampler.sample(itemCount, random.nextInt(contractDetailLimit) + 1, random, itemIndexes);
+            for (int j = 0; j < itemNum; j++) {
+                int itemId = dimensions.getItemId(itemIndexes[j] - 1);
+                int itemQuantity = random.nextInt(itemQuantityLimit) + 1;
+                float detailPrice = dimensions.getItemPrice(itemId) * itemQuantity;
+                totalPrice += detailPrice;
+                buffer.addDetail(detailIds.nextId(), itemId, itemQuantity, detailPrice, contractId);
+            }
+
+            buffer.addContract(contractId, totalPrice, state, salesStaffId, customerId);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.apdplat.data.generator.realtime;
+
+import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 流水线的写入阶段, 从filled队列中取出OrderBuffer写入MySQL并提交, 然后把清空的OrderBuffer放回free队列
+ * 使用长期持有的数据库连接及缓存的预编译语句, 出错时关闭连接, 下一批重新获取
+ */
+public class OrderWriter implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderWriter.class);
+
+    static final List<String> STATES = Arrays.asList("新建", "签订", "生效", "履行中", "终止", "作废");
+    private static final String CONTRACT_SQL = "insert into contract (id, contract_price, state, sign_day, sales_staff_id, customer_id) values(?, ?, ?, ?, ?, ?)";
+    private static final String DETAIL_SQL = "insert into contract_detail (id, item_id, item_quantity, detail_price, contract_id, sign_day) values(?, ?, ?, ?, ?, ?)";
+
+    private final BlockingQueue<OrderBuffer> filled;
+    private final BlockingQueue<OrderBuffer> free;
+    private final RateScheduler rateScheduler;
+
+    private Connection con;
+    private PreparedStatement contractPst;
+    private PreparedStatement detailPst;
+
+    public OrderWriter(BlockingQueue<OrderBuffer> filled, BlockingQueue<OrderBuffer> free, RateScheduler rateScheduler) {
+        this.filled = filled;
+        this.free = free;
+        this.rateScheduler = rateScheduler;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                OrderBuffer buffer = filled.take();
+                try {
+                    // 只统计已经提交的订单, 回滚或者没有连接时实际速率如实下降
+                    rateScheduler.completed(write(buffer));
+                } finally {
+                    // 无论成功与否都把OrderBuffer还给生产线程, 否则它会一直等待
+                    free.put(buffer);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeConnection();
+        }
+    }
+
+    /**
+     * @return 提交成功的合同数, 失败回滚时返回0
+     */
+    private int write(OrderBuffer buffer) {
+        if (buffer.getContractCount() == 0) {
+            return 0;
+        }
+        String signDay = buffer.getSignDay();
+        try {
+            openConnection();
+            for (int i = 0; i < buffer.getContractCount(); i++) {
+                contractPst.setInt(1, buffer.getContractId(i));
+                contractPst.setFloat(2, buffer.getContractPrice(i));
+                contractPst.setString(3, STATES.get(buffer.getState(i)));
+                contractPst.setString(4, signDay);
+                contractPst.setInt(5, buffer.getSalesStaffId(i));
+                contractPst.setInt(6, buffer.getCustomerId(i));
+                contractPst.addBatch();
+            }
+            for (int i = 0; i < buffer.getDetailCount(); i++) {
+                detailPst.setInt(1, buffer.getDetailId(i));
+                detailPst.setInt(2, buffer.getItemId(i));
+                detailPst.setInt(3, buffer.getItemQuantity(i));
+                detailPst.setFloat(4, buffer.getDetailPrice(i));
+                detailPst.setInt(5, buffer.getDetailContractId(i));
+                detailPst.setString(6, signDay);
+                detailPst.addBatch();
+            }
+            // 先执行合同批处理, 再执行合同详情批处理, 保证外键有效
+            contractPst.executeBatch();
+            detailPst.executeBatch();
+            con.commit();
+            return buffer.getContractCount();
+        } catch (Exception e) {
+            // 除了SQLException, 连接池错误、数据异常等运行时异常也不能让写入线程退出
+            LOGGER.error("插入合同和合同详情失败", e);
+            try {
+                if (con != null) {
+                    con.rollback();
+                }
+            } catch (SQLException rollbackEx) {
+                LOGGER.error("回滚失败", rollbackEx);
+            }
+            closeConnection();
+            return 0;
+        }
+    }
+
+    private void openConnection() throws SQLException {
+        if (con != null) {
+            return;
+        }
+        con = MySQLUtils.getConnection();
+        if (con == null) {
+            throw new SQLException("获取数据库连接失败");
+        }
+        con.setAutoCommit(false);
+        contractPst = con.prepareStatement(CONTRACT_SQL);
+        detailPst = con.prepareStatement(DETAIL_SQL);
+    }
+
+    private void closeConnection() {
+        MySQLUtils.close(contractPst);
+        MySQLUtils.close(detailPst);
+        MySQLUtils.close(con);
+        contractPst = null;
+        detailPst = null;
+        con = null;
+    }
+}
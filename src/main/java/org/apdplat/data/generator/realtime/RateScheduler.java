@@ -0,0 +1,113 @@
+package org.apdplat.data.generator.realtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌桶方式的速率控制
+ * 按固定的tick(毫秒级)推进, tick的截止时间是绝对时间, 处理耗时不会累加到等待时间上
+ * 每个tick按实际经过的时间和负载形状给出的速率累计应生成的订单数, 处理慢了下一个tick会自动追赶
+ * 积压超过maxBacklogSeconds秒的量时丢弃多出的部分, 避免长时间停顿后瞬间涌出大量订单
+ * acquire只能由一个调度线程调用, completed可以由多个生产线程同时调用
+ */
+public class RateScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateScheduler.class);
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final LoadShape shape;
+    private final long tickNanos;
+    private final double maxBacklogSeconds;
+
+    private long nextTick;
+    private long lastTick;
+    // 应生成但还未发放的订单数, 小数部分留到下一个tick
+    private double owed;
+
+    private long reportStart;
+    private long reportTicks;
+    private double reportTarget;
+    private long reportCompleted;
+    private double totalTarget;
+    private long totalDropped;
+    private final AtomicLong totalCompleted = new AtomicLong();
+
+    public RateScheduler(LoadShape shape, int tickMillis, int maxBacklogSeconds) {
+        this.shape = shape;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.maxBacklogSeconds = Math.max(1, maxBacklogSeconds);
+    }
+
+    /**
+     * 等待到下一个tick, 返回这个tick应生成的订单数
+     */
+    public int acquire() throws InterruptedException {
+        long now = System.nanoTime();
+        if (nextTick == 0) {
+            nextTick = now;
+            lastTick = now;
+            reportStart = now;
+        }
+        long wait = nextTick - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+            now = System.nanoTime();
+        }
+        double rate = shape.rateAt(LocalDateTime.now());
+        double due = rate * (now - lastTick) / 1e9;
+        lastTick = now;
+        reportTarget += due;
+        totalTarget += due;
+        owed += due;
+        double maxBacklog = Math.max(1, rate * maxBacklogSeconds);
+        long dropped = 0;
+        if (owed > maxBacklog) {
+            dropped = (long) (owed - maxBacklog);
+            totalDropped += dropped;
+            owed = maxBacklog;
+        }
+        int permits = (int) owed;
+        owed -= permits;
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("tick 应生成: {}, 发放: {}, 留到下一个tick: {}, 丢弃: {}, 累计完成: {}",
+                    String.format("%.2f", due), permits, String.format("%.2f", owed), dropped, totalCompleted.get());
+        }
+        nextTick += tickNanos;
+        // 落后超过一个tick时不再逐个补tick, 欠下的数量已经记在owed中
+        if (nextTick < now) {
+            nextTick = now + tickNanos;
+        }
+        reportTicks++;
+        report(now);
+        return permits;
+    }
+
+    /**
+     * 报告实际生成完成的订单数
+     */
+    public void completed(int count) {
+        totalCompleted.addAndGet(count);
+    }
+
+    /**
+     * 每秒输出一次目标速率和实际速率
+     */
+    private void report(long now) {
+        long elapsed = now - reportStart;
+        if (elapsed < REPORT_INTERVAL_NANOS) {
+            return;
+        }
+        long completed = totalCompleted.get();
+        double seconds = elapsed / 1e9;
+        LOGGER.info("tick数: {}, 目标速率: {}/秒, 实际速率: {}/秒, 累计目标: {}, 累计完成: {}, 累计丢弃: {}",
+                reportTicks, String.format("%.1f", reportTarget / seconds), String.format("%.1f", (completed - reportCompleted) / seconds),
+                (long) totalTarget, completed, totalDropped);
+        reportStart = now;
+        reportTicks = 0;
+        reportTarget = 0;
+        reportCompleted = completed;
+    }
+}
@@ -0,0 +1,76 @@
+package org.apdplat.data.generator.realtime;
+
+import org.apdplat.data.generator.generator.IdAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 多线程实时订单生成
+ * 调用run的线程负责速率控制, 把每个tick的订单数拆分后放入有界任务队列, 多个OrderWorker共享这个速率预算
+ * 每个OrderWorker再配一个OrderWriter写入线程, 生成下一批和提交上一批同时进行
+ * 生产线程跟不上时队列会满, 调度线程被阻塞, 欠下的订单由RateScheduler在后续tick中追赶
+ */
+public class RealtimeEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RealtimeEngine.class);
+
+    private final RateScheduler rateScheduler;
+    private final DimensionCache dimensionCache;
+    private final int workerCount;
+    private final int contractDetailLimit;
+    private final int itemQuantityLimit;
+    private final int batchSize;
+    private final BlockingQueue<Integer> tasks;
+
+    public RealtimeEngine(RateScheduler rateScheduler, DimensionCache dimensionCache, int workerCount,
+                          int contractDetailLimit, int itemQuantityLimit, int batchSize) {
+        this.rateScheduler = rateScheduler;
+        this.dimensionCache = dimensionCache;
+        this.workerCount = Math.max(1, workerCount);
+        this.contractDetailLimit = contractDetailLimit;
+        this.itemQuantityLimit = itemQuantityLimit;
+        this.batchSize = batchSize;
+        this.tasks = new ArrayBlockingQueue<>(this.workerCount * 2);
+    }
+
+    public void run() throws InterruptedException {
+        IdAllocator contractIds = IdAllocator.create("contract");
+        IdAllocator detailIds = IdAllocator.create("contract_detail");
+        List<Thread> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(new OrderWorker(tasks, rateScheduler, dimensionCache, contractIds, detailIds,
+                    contractDetailLimit, itemQuantityLimit, batchSize), "order-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        LOGGER.info("实时订单生产线程数: {}", workerCount);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                int orders = rateScheduler.acquire();
+                dispatch(orders);
+            }
+        } finally {
+            workers.forEach(Thread::interrupt);
+        }
+    }
+
+    /**
+     * 把一个tick的订单数平均拆分给所有生产线程, 每个任务不超过batchSize
+     */
+    private void dispatch(int orders) throws InterruptedException {
+        if (orders <= 0) {
+            return;
+        }
+        int chunk = Math.min(batchSize, (orders + workerCount - 1) / workerCount);
+        while (orders > 0) {
+            int count = Math.min(chunk, orders);
+            tasks.put(count);
+            orders -= count;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.apdplat.data.generator.sink;
+
+import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 写MySQL的RowSink的公共部分: 连接、事务、行数及写出耗时统计
+ * 子类只负责把行缓存起来并在flush时用各自的方式写出
+ */
+abstract class AbstractMySQLSink implements RowSink {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractMySQLSink.class);
+
+    protected final String table;
+    protected final Connection con;
+    private final String type;
+    private final boolean ownConnection;
+    // 共用连接及事务的父表, 自动写出前先写出父表, 保证外键有效
+    private AbstractMySQLSink parent;
+    protected long rowCount;
+    protected long writeNanos;
+
+    AbstractMySQLSink(String table, String type, Connection con, boolean ownConnection) throws SQLException {
+        this.table = table;
+        this.type = type;
+        this.con = con;
+        this.ownConnection = ownConnection;
+        if (ownConnection) {
+            con.setAutoCommit(false);
+        }
+    }
+
+    Connection getConnection() {
+        return con;
+    }
+
+    void setParent(AbstractMySQLSink parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * 缓存满了时由子类调用, 先写出父表还未写出的行, 再写出自己的
+     */
+    protected void autoFlush() throws Exception {
+        if (parent != null) {
+            parent.flush();
+        }
+        flush();
+    }
+
+    /**
+     * 丢弃还未写出的行
+     */
+    protected abstract void discard() throws SQLException;
+
+    /**
+     * 关闭子类创建的Statement
+     */
+    protected abstract void closeStatements();
+
+    @Override
+    public void commit() throws Exception {
+        flush();
+        long start = System.nanoTime();
+        con.commit();
+        writeNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void rollback() {
+        // 每个块打开一个RowSink, 回滚的行不计入写出统计
+        rowCount = 0;
+        try {
+            discard();
+            con.rollback();
+        } catch (Exception e) {
+            LOGGER.error("回滚失败, table: {}", table, e);
+        }
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() {
+        Sinks.record(table, type, rowCount, writeNanos);
+        closeStatements();
+        if (ownConnection) {
+            MySQLUtils.close(con);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.apdplat.data.generator.sink;
+
+/**
+ * 丢弃所有数据, 只用来测量纯粹的数据生成速度
+ */
+public class BlackholeSink implements RowSink {
+    private final String table;
+    private long rowCount;
+    // 累加写入的值, 关闭时汇总并输出到日志, 避免JIT把生成数据的代码当成无用代码优化掉
+    private long checksum;
+
+    BlackholeSink(String table) {
+        this.table = table;
+    }
+
+    @Override
+    public void setInt(int index, int value) {
+        checksum += value;
+    }
+
+    @Override
+    public void setFloat(int index, float value) {
+        checksum += Float.floatToRawIntBits(value);
+    }
+
+    @Override
+    public void setString(int index, String value) {
+        if (value != null) {
+            checksum += value.length();
+        }
+    }
+
+    @Override
+    public void addRow() {
+        rowCount++;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void commit() {
+    }
+
+    @Override
+    public void rollback() {
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() {
+        Sinks.record(table, "blackhole", rowCount, 0, checksum);
+    }
+}
@@ -0,0 +1,122 @@
+package org.apdplat.data.generator.sink;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 把行写成分隔符分隔的文本文件, 列的顺序和hive_ddl.sql中的表定义一致, 空值写成Hive默认的\N
+ * 行先缓存在内存中, flush时才写入分片文件, 所以rollback可以丢弃还未flush的行
+ */
+public class FileSink implements RowSink {
+    // 缓存的文本超过这个字符数时自动写出
+    private static final int MAX_BUFFER_CHARS = 1024 * 1024;
+
+    private final String table;
+    private final PartFiles parts;
+    private final String delimiter;
+    // 输出的第i列对应setXxx时的第positions[i] + 1列, -1表示生成器没有这一列
+    private final int[] positions;
+    private final String[] fields;
+    private final StringBuilder buffer = new StringBuilder();
+    private PartFiles.PartWriter writer;
+    private long rowCount;
+    private long writeNanos;
+
+    FileSink(String table, String[] columns, PartFiles parts, String delimiter) {
+        this.table = table;
+        this.parts = parts;
+        this.delimiter = delimiter;
+        this.fields = new String[columns.length];
+        this.positions = HiveSchema.positions(table, columns);
+    }
+
+    @Override
+    public void setInt(int index, int value) {
+        fields[index - 1] = Integer.toString(value);
+    }
+
+    @Override
+    public void setFloat(int index, float value) {
+        fields[index - 1] = Float.toString(value);
+    }
+
+    @Override
+    public void setString(int index, String value) {
+        fields[index - 1] = value == null ? null : clean(value);
+    }
+
+    /**
+     * Hive文本表没有转义, 把值中的分隔符和换行替换成空格, 保证一行数据不被拆开
+     */
+    private String clean(String value) {
+        if (value.indexOf('\n') < 0 && value.indexOf('\r') < 0 && !value.contains(delimiter)) {
+            return value;
+        }
+        return value.replace(delimiter, " ").replace('\n', ' ').replace('\r', ' ');
+    }
+
+    @Override
+    public void addRow() throws Exception {
+        for (int i = 0; i < positions.length; i++) {
+            if (i > 0) {
+                buffer.append(delimiter);
+            }
+            String field = positions[i] < 0 ? null : fields[positions[i]];
+            buffer.append(field == null ? "\\N" : field);
+        }
+        buffer.append('\n');
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = null;
+        }
+        rowCount++;
+        if (buffer.length() >= MAX_BUFFER_CHARS) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws Exception {
+        if (buffer.length() == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            if (writer == null) {
+                writer = parts.borrow();
+            }
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            writer.write(bytes, bytes.length);
+        } finally {
+            buffer.setLength(0);
+            writeNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void commit() throws Exception {
+        flush();
+        if (writer != null) {
+            long start = System.nanoTime();
+            writer.flush();
+            writeNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void rollback() {
+        buffer.setLength(0);
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() {
+        Sinks.record(table, Sinks.FILE, rowCount, writeNanos);
+        if (writer != null) {
+            parts.giveBack(writer);
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.apdplat.data.generator.sink;
+
+import org.apdplat.data.generator.utils.MultiResourcesUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 从hive_ddl.sql中读取每张表的列顺序和字段分隔符, 导出的文件和Hive表定义保持一致
+ */
+class HiveSchema {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HiveSchema.class);
+    private static final Pattern TABLE = Pattern.compile("CREATE\\s+TABLE\\s+`?(\\w+)`?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COLUMN = Pattern.compile("^`(\\w+)`\\s+(\\w+(\\(\\d+\\))?)");
+    private static final Pattern DELIMITER = Pattern.compile("fields\\s+terminated\\s+by\\s+'([^']+)'", Pattern.CASE_INSENSITIVE);
+
+    private static final Map<String, List<String>> COLUMNS = new HashMap<>();
+    private static final Map<String, List<String>> TYPES = new HashMap<>();
+    private static final Map<String, String> DELIMITERS = new HashMap<>();
+
+    static {
+        String table = null;
+        for (String line : MultiResourcesUtils.load("hive_ddl.sql")) {
+            Matcher matcher = TABLE.matcher(line);
+            if (matcher.find()) {
+                table = matcher.group(1);
+                COLUMNS.put(table, new ArrayList<>());
+                TYPES.put(table, new ArrayList<>());
+                continue;
+            }
+            if (table == null) {
+                continue;
+            }
+            matcher = COLUMN.matcher(line);
+            if (matcher.find()) {
+                COLUMNS.get(table).add(matcher.group(1));
+                TYPES.get(table).add(matcher.group(2).toLowerCase());
+            }
+            matcher = DELIMITER.matcher(line);
+            if (matcher.find()) {
+                DELIMITERS.put(table, matcher.group(1).replace("\\t", "\t"));
+                table = null;
+            }
+        }
+        LOGGER.info("hive_ddl.sql中的表: {}", COLUMNS.keySet());
+    }
+
+    private HiveSchema() {
+    }
+
+    /**
+     * 表在Hive中的列顺序, 不存在时返回空列表
+     */
+    static List<String> getColumns(String table) {
+        return COLUMNS.getOrDefault(table, Collections.emptyList());
+    }
+
+    /**
+     * 表在Hive中每一列的类型, 比如int, float, varchar(10), 顺序和getColumns一致
+     */
+    static List<String> getTypes(String table) {
+        return TYPES.getOrDefault(table, Collections.emptyList());
+    }
+
+    /**
+     * 按Hive中的列顺序输出时, 第i列对应生成器打开的第positions[i] + 1列, -1表示生成器没有这一列
+     * hive_ddl.sql中没有这张表时按生成器的列顺序输出
+     */
+    static int[] positions(String table, String[] columns) {
+        List<String> hiveColumns = getColumns(table);
+        if (hiveColumns.isEmpty()) {
+            int[] positions = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                positions[i] = i;
+            }
+            return positions;
+        }
+        int[] positions = new int[hiveColumns.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = -1;
+            for (int j = 0; j < columns.length; j++) {
+                if (columns[j].equals(hiveColumns.get(i))) {
+                    positions[i] = j;
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * 表在Hive中的字段分隔符, 不存在时返回defaultValue
+     */
+    static String getDelimiter(String table, String defaultValue) {
+        return DELIMITERS.getOrDefault(table, defaultValue);
+    }
+}
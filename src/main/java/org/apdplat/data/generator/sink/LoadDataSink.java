@@ -0,0 +1,164 @@
+package org.apdplat.data.generator.sink;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+import org.apdplat.data.generator.mysql.MySQLUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+/**
+ * 把行编码成制表符分隔的文本, 通过内存中的InputStream直接交给LOAD DATA LOCAL INFILE, 不落临时文件
+ * 需要连接参数allowLoadLocalInfile=true, 以及服务器端local_infile=ON
+ */
+public class LoadDataSink extends AbstractMySQLSink {
+    // 缓冲的文本超过这个字符数时自动写出, 避免单次LOAD DATA过大
+    private static final int MAX_BUFFER_CHARS = 4 * 1024 * 1024;
+
+    private final String loadSql;
+    private final String[] fields;
+    private final StringBuilder buffer = new StringBuilder();
+    private int pending;
+    private Statement statement;
+
+    LoadDataSink(String table, String[] columns, Connection con, boolean ownConnection) throws SQLException {
+        super(table, "mysql-" + Sinks.LOAD, con, ownConnection);
+        this.fields = new String[columns.length];
+        this.loadSql = "LOAD DATA LOCAL INFILE 'generator.tsv' INTO TABLE " + table
+                + " CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'"
+                + " (" + String.join(", ", columns) + ")";
+    }
+
+    @Override
+    public void setInt(int index, int value) {
+        fields[index - 1] = Integer.toString(value);
+    }
+
+    @Override
+    public void setFloat(int index, float value) {
+        fields[index - 1] = Float.toString(value);
+    }
+
+    @Override
+    public void setString(int index, String value) {
+        fields[index - 1] = value == null ? null : escape(value);
+    }
+
+    /**
+     * 转义LOAD DATA默认的特殊字符
+     */
+    private static String escape(String value) {
+        StringBuilder text = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement;
+            switch (c) {
+                case '\\':
+                    replacement = "\\\\";
+                    break;
+                case '\t':
+                    replacement = "\\t";
+                    break;
+                case '\n':
+                    replacement = "\\n";
+                    break;
+                case '\r':
+                    replacement = "\\r";
+                    break;
+                case '\0':
+                    replacement = "\\0";
+                    break;
+                default:
+                    replacement = null;
+            }
+            if (replacement == null) {
+                if (text != null) {
+                    text.append(c);
+                }
+            } else {
+                if (text == null) {
+                    text = new StringBuilder(value.length() + 8).append(value, 0, i);
+                }
+                text.append(replacement);
+            }
+        }
+        return text == null ? value : text.toString();
+    }
+
+    @Override
+    public void addRow() throws Exception {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                buffer.append('\t');
+            }
+            buffer.append(fields[i] == null ? "\\N" : fields[i]);
+            fields[i] = null;
+        }
+        buffer.append('\n');
+        pending++;
+        rowCount++;
+        if (buffer.length() >= MAX_BUFFER_CHARS) {
+            autoFlush();
+        }
+    }
+
+    @Override
+    public void flush() throws Exception {
+        if (pending == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        int rows = pending;
+        try {
+            if (statement == null) {
+                statement = con.createStatement();
+            }
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            statement.unwrap(JdbcStatement.class).setLocalInfileInputStream(new ByteArrayInputStream(bytes));
+            statement.execute(loadSql);
+            // LOCAL方式相当于IGNORE, 主键重复、外键及类型转换错误只产生警告并丢掉这一行, 行数不一致时抛出异常, 由调用者回滚
+            int loaded = statement.getUpdateCount();
+            if (loaded != rows) {
+                throw new SQLException("LOAD DATA写入表 " + table + " 的行数不一致, 应写入: " + rows + ", 实际写入: " + loaded + ", 警告: " + warnings());
+            }
+        } finally {
+            buffer.setLength(0);
+            pending = 0;
+            writeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * 最近一次LOAD DATA的前几条警告
+     */
+    private String warnings() {
+        StringBuilder text = new StringBuilder();
+        try {
+            SQLWarning warning = statement.getWarnings();
+            for (int i = 0; warning != null && i < 5; i++) {
+                if (i > 0) {
+                    text.append("; ");
+                }
+                text.append(warning.getErrorCode()).append(' ').append(warning.getMessage());
+                warning = warning.getNextWarning();
+            }
+        } catch (SQLException e) {
+            text.append(e.getMessage());
+        }
+        return text.toString();
+    }
+
+    @Override
+    protected void discard() {
+        buffer.setLength(0);
+        pending = 0;
+    }
+
+    @Override
+    protected void closeStatements() {
+        MySQLUtils.close(statement);
+    }
+}
@@ -0,0 +1,138 @@
+package org.apdplat.data.generator.sink;
+
+import org.apdplat.data.generator.mysql.MySQLUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * 把多行数据合并成一条 insert into t (...) values (...), (...), ... 写入MySQL
+ * 不依赖驱动的rewriteBatchedStatements, 满rowsPerStatement行时自动写出, 满行的语句会被缓存复用
+ */
+public class MultiRowSink extends AbstractMySQLSink {
+    private static final int MAX_PLACEHOLDERS = 65535;
+    private static final byte INT = 1;
+    private static final byte FLOAT = 2;
+    private static final byte STRING = 3;
+
+    private final String[] columns;
+    private final int rowsPerStatement;
+    // 还未写出的行, 第row行第index列的值在下标row * columns.length + index - 1处
+    private final byte[] kinds;
+    private final int[] ints;
+    private final float[] floats;
+    private final String[] strings;
+    private int pending;
+    private PreparedStatement fullPst;
+
+    MultiRowSink(String table, String[] columns, int rowsPerStatement, Connection con, boolean ownConnection) throws SQLException {
+        super(table, "mysql-" + Sinks.MULTIROW, con, ownConnection);
+        this.columns = columns;
+        this.rowsPerStatement = Math.max(1, Math.min(rowsPerStatement, MAX_PLACEHOLDERS / columns.length));
+        int slots = this.rowsPerStatement * columns.length;
+        this.kinds = new byte[slots];
+        this.ints = new int[slots];
+        this.floats = new float[slots];
+        this.strings = new String[slots];
+    }
+
+    private String insertSql(int rows) {
+        StringBuilder row = new StringBuilder("(");
+        for (int i = 0; i < columns.length; i++) {
+            row.append(i > 0 ? ", ?" : "?");
+        }
+        row.append(")");
+        StringBuilder sql = new StringBuilder();
+        sql.append("insert into ").append(table).append(" (").append(String.join(", ", columns)).append(") values");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i > 0 ? ", " : " ").append(row);
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public void setInt(int index, int value) {
+        int slot = pending * columns.length + index - 1;
+        kinds[slot] = INT;
+        ints[slot] = value;
+    }
+
+    @Override
+    public void setFloat(int index, float value) {
+        int slot = pending * columns.length + index - 1;
+        kinds[slot] = FLOAT;
+        floats[slot] = value;
+    }
+
+    @Override
+    public void setString(int index, String value) {
+        int slot = pending * columns.length + index - 1;
+        kinds[slot] = STRING;
+        strings[slot] = value;
+    }
+
+    @Override
+    public void addRow() throws Exception {
+        pending++;
+        rowCount++;
+        if (pending == rowsPerStatement) {
+            autoFlush();
+        }
+    }
+
+    @Override
+    public void flush() throws Exception {
+        if (pending == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        PreparedStatement pst;
+        if (pending == rowsPerStatement) {
+            if (fullPst == null) {
+                fullPst = con.prepareStatement(insertSql(rowsPerStatement));
+            }
+            pst = fullPst;
+        } else {
+            pst = con.prepareStatement(insertSql(pending));
+        }
+        try {
+            int slots = pending * columns.length;
+            for (int slot = 0; slot < slots; slot++) {
+                switch (kinds[slot]) {
+                    case INT:
+                        pst.setInt(slot + 1, ints[slot]);
+                        break;
+                    case FLOAT:
+                        pst.setFloat(slot + 1, floats[slot]);
+                        break;
+                    case STRING:
+                        pst.setString(slot + 1, strings[slot]);
+                        strings[slot] = null;
+                        break;
+                    default:
+                        pst.setNull(slot + 1, Types.NULL);
+                }
+                kinds[slot] = 0;
+            }
+            pst.executeUpdate();
+        } finally {
+            pending = 0;
+            if (pst != fullPst) {
+                MySQLUtils.close(pst);
+            }
+            writeNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    protected void discard() {
+        pending = 0;
+    }
+
+    @Override
+    protected void closeStatements() {
+        MySQLUtils.close(fullPst);
+    }
+}
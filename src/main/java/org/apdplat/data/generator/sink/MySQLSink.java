@@ -0,0 +1,84 @@
+package org.apdplat.data.generator.sink;
+
+import org.apdplat.data.generator.mysql.MySQLUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * 通过JDBC批处理把数据写入MySQL
+ */
+public class MySQLSink extends AbstractMySQLSink {
+    private final PreparedStatement pst;
+
+    MySQLSink(String table, String sql, Connection con, boolean ownConnection) throws SQLException {
+        super(table, "mysql-" + Sinks.BATCH, con, ownConnection);
+        this.pst = con.prepareStatement(sql);
+    }
+
+    static String insertSql(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("insert into ").append(table).append(" (").append(String.join(", ", columns)).append(") values(");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("?");
+        }
+        sql.append(");");
+        return sql.toString();
+    }
+
+    static String updateSql(String table, String keyColumn, String[] columns) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("update ").append(table).append(" set ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columns[i]).append(" = ?");
+        }
+        sql.append(" where ").append(keyColumn).append(" = ?");
+        return sql.toString();
+    }
+
+    @Override
+    public void setInt(int index, int value) throws Exception {
+        pst.setInt(index, value);
+    }
+
+    @Override
+    public void setFloat(int index, float value) throws Exception {
+        pst.setFloat(index, value);
+    }
+
+    @Override
+    public void setString(int index, String value) throws Exception {
+        pst.setString(index, value);
+    }
+
+    @Override
+    public void addRow() throws Exception {
+        pst.addBatch();
+        rowCount++;
+    }
+
+    @Override
+    public void flush() throws Exception {
+        long start = System.nanoTime();
+        pst.executeBatch();
+        pst.clearBatch();
+        writeNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    protected void discard() throws SQLException {
+        pst.clearBatch();
+    }
+
+    @Override
+    protected void closeStatements() {
+        MySQLUtils.close(pst);
+    }
+}
@@ -0,0 +1,171 @@
+package org.apdplat.data.generator.sink;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.CompressionKind;
+import org.apache.orc.OrcFile;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一张表的ORC分片文件, 目录为 输出目录/表名[/分区]/part-00000.orc
+ * 和PartFiles一样, 同时写同一个分区的OrcSink各自借用一个OrcPart, 每个OrcPart是一个独立的ORC Writer
+ * 所以各个工作线程并行地写出各自文件的stripe, 每个文件超过partBytes(按未压缩的数据量估算)时换下一个文件
+ * 按月分区时分区数很多, 打开的文件超过maxOpenWriters时关闭最久没有使用的空闲文件, 避免耗尽内存和文件句柄
+ */
+class OrcFiles {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrcFiles.class);
+
+    private final String table;
+    private final File dir;
+    private final TypeDescription schema;
+    private final long partBytes;
+    private final CompressionKind compress;
+    private final int maxOpenWriters;
+    private final Configuration conf = new Configuration();
+    private final FileSystem fs;
+    private final AtomicInteger nextPart = new AtomicInteger();
+    // 每个分区空闲的OrcPart
+    private final Map<String, List<OrcPart>> idle = new HashMap<>();
+    private final List<OrcPart> all = new ArrayList<>();
+    // 空闲的OrcPart, 按归还的先后排列, 最前面的最久没有使用
+    private final Set<OrcPart> leastRecentlyUsed = new LinkedHashSet<>();
+
+    OrcFiles(File root, String table, TypeDescription schema, long partBytes, CompressionKind compress, int maxOpenWriters) {
+        this.table = table;
+        this.dir = new File(root, table);
+        this.schema = schema;
+        this.partBytes = partBytes;
+        this.compress = compress;
+        this.maxOpenWriters = Math.max(1, maxOpenWriters);
+        try {
+            // 不使用带校验和的LocalFileSystem, 避免在数据目录中生成.crc文件
+            this.fs = FileSystem.getLocal(conf).getRaw();
+        } catch (IOException e) {
+            throw new IllegalStateException("获取本地文件系统失败", e);
+        }
+        // 分区目录是上次导出时生成的, 整个表目录都先删除
+        delete(dir);
+        if (!dir.mkdirs()) {
+            throw new IllegalStateException("创建目录失败: " + dir.getAbsolutePath());
+        }
+        LOGGER.info("表 {} 导出ORC到目录: {}, schema: {}, 压缩: {}, 单个文件上限: {} 字节", table, dir.getAbsolutePath(), schema, compress, partBytes);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("删除文件失败: {}", file.getAbsolutePath());
+        }
+    }
+
+    TypeDescription getSchema() {
+        return schema;
+    }
+
+    /**
+     * @param partition 相对于表目录的分区路径, 比如year=2017/month=1, 不分区时为空字符串
+     */
+    synchronized OrcPart borrow(String partition) {
+        List<OrcPart> parts = idle.get(partition);
+        if (parts != null && !parts.isEmpty()) {
+            OrcPart part = parts.remove(parts.size() - 1);
+            leastRecentlyUsed.remove(part);
+            return part;
+        }
+        OrcPart part = new OrcPart(partition);
+        all.add(part);
+        return part;
+    }
+
+    void giveBack(OrcPart part) {
+        List<OrcPart> evicted = new ArrayList<>();
+        synchronized (this) {
+            idle.computeIfAbsent(part.partition, key -> new ArrayList<>()).add(part);
+            leastRecentlyUsed.add(part);
+            Iterator<OrcPart> iterator = leastRecentlyUsed.iterator();
+            while (all.size() > maxOpenWriters && iterator.hasNext()) {
+                OrcPart oldest = iterator.next();
+                iterator.remove();
+                idle.get(oldest.partition).remove(oldest);
+                all.remove(oldest);
+                evicted.add(oldest);
+            }
+        }
+        // 关闭时写出最后的stripe和文件尾, 不占用锁
+        for (OrcPart oldest : evicted) {
+            oldest.close();
+        }
+    }
+
+    synchronized void close() {
+        for (OrcPart part : all) {
+            part.close();
+        }
+        idle.clear();
+        leastRecentlyUsed.clear();
+        all.clear();
+    }
+
+    class OrcPart {
+        private final String partition;
+        private Writer writer;
+        private long bytes;
+
+        private OrcPart(String partition) {
+            this.partition = partition;
+        }
+
+        void write(VectorizedRowBatch batch, long batchBytes) throws IOException {
+            if (writer != null && bytes + batchBytes > partBytes) {
+                close();
+            }
+            if (writer == null) {
+                File partDir = partition.isEmpty() ? dir : new File(dir, partition);
+                if (!partDir.exists() && !partDir.mkdirs() && !partDir.exists()) {
+                    throw new IOException("创建目录失败: " + partDir.getAbsolutePath());
+                }
+                File file = new File(partDir, String.format("part-%05d.orc", nextPart.getAndIncrement()));
+                writer = OrcFile.createWriter(new Path(file.toURI()), OrcFile.writerOptions(conf)
+                        .setSchema(schema)
+                        .compress(compress)
+                        .fileSystem(fs));
+                bytes = 0;
+            }
+            writer.addRowBatch(batch);
+            bytes += batchBytes;
+        }
+
+        void close() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOGGER.error("关闭ORC文件失败, table: {}, partition: {}", table, partition, e);
+            }
+            writer = null;
+        }
+    }
+}
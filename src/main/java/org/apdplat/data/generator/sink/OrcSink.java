@@ -0,0 +1,229 @@
+package org.apdplat.data.generator.sink;
+
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把行写成ORC列式文件, 列和类型来自hive_ddl.sql中的表定义
+ * 有sign_day列的表(contract, contract_detail)按签订日期的年和月分区, 目录为year=2017/month=1, 和Hive的分区目录一致
+ * 行先按分区写入列向量批次, 批次满了或flush时才交给ORC Writer, 所以rollback可以丢弃还未写出的行
+ */
+public class OrcSink implements RowSink {
+    static final String PARTITION_COLUMN = "sign_day";
+    // 分区表同时有很多个批次, 每个批次小一些, 避免每个工作线程占用过多内存
+    private static final int PARTITIONED_BATCH_ROWS = 256;
+    private static final String DEFAULT_PARTITION = "__HIVE_DEFAULT_PARTITION__";
+
+    private final String table;
+    private final OrcFiles files;
+    // 输出的第i列对应setXxx时的第positions[i] + 1列, -1表示生成器没有这一列
+    private final int[] positions;
+    private final int batchRows;
+    // sign_day在setXxx中的列序号减1, -1表示不分区
+    private final int partitionColumn;
+    private final long[] ints;
+    private final double[] floats;
+    private final String[] strings;
+    private final boolean[] present;
+    private final Map<String, Batch> batches = new HashMap<>();
+    // 相邻的行通常属于同一个分区, 缓存上一行的批次
+    private Batch lastBatch;
+    private long rowCount;
+    private long writeNanos;
+
+    OrcSink(String table, String[] columns, OrcFiles files) {
+        this.table = table;
+        this.files = files;
+        this.positions = HiveSchema.positions(table, columns);
+        int partition = -1;
+        for (int i = 0; i < columns.length; i++) {
+            if (PARTITION_COLUMN.equals(columns[i])) {
+                partition = i;
+            }
+        }
+        this.partitionColumn = partition;
+        this.batchRows = partition < 0 ? VectorizedRowBatch.DEFAULT_SIZE : PARTITIONED_BATCH_ROWS;
+        this.ints = new long[columns.length];
+        this.floats = new double[columns.length];
+        this.strings = new String[columns.length];
+        this.present = new boolean[columns.length];
+    }
+
+    @Override
+    public void setInt(int index, int value) {
+        ints[index - 1] = value;
+        present[index - 1] = true;
+    }
+
+    @Override
+    public void setFloat(int index, float value) {
+        floats[index - 1] = value;
+        present[index - 1] = true;
+    }
+
+    @Override
+    public void setString(int index, String value) {
+        strings[index - 1] = value;
+        present[index - 1] = value != null;
+    }
+
+    @Override
+    public void addRow() throws Exception {
+        Batch batch = batchOf(partitionColumn < 0 ? null : strings[partitionColumn]);
+        VectorizedRowBatch rows = batch.rows;
+        int row = rows.size++;
+        for (int i = 0; i < positions.length; i++) {
+            ColumnVector vector = rows.cols[i];
+            int position = positions[i];
+            if (position < 0 || !present[position]) {
+                vector.noNulls = false;
+                vector.isNull[row] = true;
+                continue;
+            }
+            vector.isNull[row] = false;
+            if (vector instanceof LongColumnVector) {
+                ((LongColumnVector) vector).vector[row] = ints[position];
+                batch.bytes += 4;
+            } else if (vector instanceof DoubleColumnVector) {
+                ((DoubleColumnVector) vector).vector[row] = floats[position];
+                batch.bytes += 4;
+            } else {
+                byte[] bytes = strings[position].getBytes(StandardCharsets.UTF_8);
+                ((BytesColumnVector) vector).setVal(row, bytes);
+                batch.bytes += bytes.length;
+            }
+        }
+        for (int i = 0; i < present.length; i++) {
+            present[i] = false;
+            strings[i] = null;
+        }
+        rowCount++;
+        if (rows.size == rows.getMaxSize()) {
+            write(batch);
+        }
+    }
+
+    /**
+     * sign_day的格式为yyyy-MM-dd HH:mm:ss, 分区为year=yyyy/month=M
+     */
+    private Batch batchOf(String signDay) {
+        if (partitionColumn < 0) {
+            if (lastBatch == null) {
+                lastBatch = newBatch("");
+                batches.put("", lastBatch);
+            }
+            return lastBatch;
+        }
+        if (lastBatch != null && signDay != null && lastBatch.month != null && signDay.regionMatches(0, lastBatch.month, 0, 7)) {
+            return lastBatch;
+        }
+        String month = signDay == null || signDay.length() < 7 ? null : signDay.substring(0, 7);
+        Batch batch = batches.get(month);
+        if (batch == null) {
+            String partition = month == null
+                    ? "year=" + DEFAULT_PARTITION + "/month=" + DEFAULT_PARTITION
+                    : "year=" + Integer.parseInt(month.substring(0, 4)) + "/month=" + Integer.parseInt(month.substring(5, 7));
+            batch = newBatch(partition);
+            batch.month = month;
+            batches.put(month, batch);
+        }
+        lastBatch = batch;
+        return batch;
+    }
+
+    private Batch newBatch(String partition) {
+        return new Batch(partition, files.getSchema().createRowBatch(batchRows));
+    }
+
+    private void write(Batch batch) throws Exception {
+        if (batch.rows.size == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        OrcFiles.OrcPart part = files.borrow(batch.partition);
+        try {
+            part.write(batch.rows, batch.bytes);
+        } finally {
+            files.giveBack(part);
+            batch.rows.reset();
+            batch.bytes = 0;
+            writeNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void flush() throws Exception {
+        for (Batch batch : batches.values()) {
+            write(batch);
+        }
+    }
+
+    @Override
+    public void commit() throws Exception {
+        flush();
+    }
+
+    @Override
+    public void rollback() {
+        for (Batch batch : batches.values()) {
+            batch.rows.reset();
+            batch.bytes = 0;
+        }
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() {
+        Sinks.record(table, Sinks.ORC, rowCount, writeNanos);
+        batches.clear();
+        lastBatch = null;
+    }
+
+    /**
+     * 一个分区中还未写出的行
+     */
+    private static class Batch {
+        private final String partition;
+        private final VectorizedRowBatch rows;
+        // 分区对应的yyyy-MM
+        private String month;
+        // 未压缩的数据量估算
+        private long bytes;
+
+        Batch(String partition, VectorizedRowBatch rows) {
+            this.partition = partition;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * ORC的schema, 列和类型与hive_ddl.sql中的表定义一致
+     */
+    static String schemaOf(String table) {
+        List<String> columns = HiveSchema.getColumns(table);
+        List<String> types = HiveSchema.getTypes(table);
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("hive_ddl.sql中没有表: " + table);
+        }
+        StringBuilder schema = new StringBuilder("struct<");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                schema.append(",");
+            }
+            schema.append(columns.get(i)).append(":").append(types.get(i));
+        }
+        return schema.append(">").toString();
+    }
+}
@@ -0,0 +1,105 @@
+package org.apdplat.data.generator.sink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一张表的分片文件, 目录为 输出目录/表名, 文件名为part-00000, part-00001 ...
+ * 同时写的FileSink各自借用一个PartWriter, 所以文件数约等于并发数, 单个文件超过partBytes时换下一个文件
+ */
+class PartFiles {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartFiles.class);
+
+    private final String table;
+    private final File dir;
+    private final long partBytes;
+    private final AtomicInteger nextPart = new AtomicInteger();
+    // 空闲的PartWriter
+    private final List<PartWriter> idle = new ArrayList<>();
+    private final List<PartWriter> all = new ArrayList<>();
+
+    PartFiles(File root, String table, long partBytes) {
+        this.table = table;
+        this.dir = new File(root, table);
+        this.partBytes = partBytes;
+        // 和sqoop的--delete-target-dir一样, 先删除以前导出的文件
+        File[] old = dir.listFiles((d, name) -> name.startsWith("part-"));
+        if (old != null) {
+            for (File file : old) {
+                if (!file.delete()) {
+                    LOGGER.warn("删除文件失败: {}", file.getAbsolutePath());
+                }
+            }
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IllegalStateException("创建目录失败: " + dir.getAbsolutePath());
+        }
+        LOGGER.info("表 {} 导出到目录: {}, 单个文件上限: {} 字节", table, dir.getAbsolutePath(), partBytes);
+    }
+
+    synchronized PartWriter borrow() {
+        if (!idle.isEmpty()) {
+            return idle.remove(idle.size() - 1);
+        }
+        PartWriter writer = new PartWriter();
+        all.add(writer);
+        return writer;
+    }
+
+    synchronized void giveBack(PartWriter writer) {
+        idle.add(writer);
+    }
+
+    synchronized void close() {
+        for (PartWriter writer : all) {
+            writer.close();
+        }
+        idle.clear();
+        all.clear();
+    }
+
+    class PartWriter {
+        private OutputStream out;
+        private long bytes;
+
+        void write(byte[] data, int length) throws IOException {
+            if (out != null && bytes + length > partBytes) {
+                close();
+            }
+            if (out == null) {
+                File file = new File(dir, String.format("part-%05d", nextPart.getAndIncrement()));
+                out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+                bytes = 0;
+            }
+            out.write(data, 0, length);
+            bytes += length;
+        }
+
+        void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        void close() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOGGER.error("关闭文件失败, table: {}", table, e);
+            }
+            out = null;
+        }
+    }
+}
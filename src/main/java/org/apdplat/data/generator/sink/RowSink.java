@@ -0,0 +1,42 @@
+package org.apdplat.data.generator.sink;
+
+/**
+ * 生成器写出数据的统一接口, 一个RowSink对应一张表的一组列, 只能被一个线程使用
+ * 用法与PreparedStatement类似: 先按列序号(从1开始)设置值, 然后addRow, 批量满了flush, 结束时commit
+ */
+public interface RowSink extends AutoCloseable {
+
+    void setInt(int index, int value) throws Exception;
+
+    void setFloat(int index, float value) throws Exception;
+
+    void setString(int index, String value) throws Exception;
+
+    /**
+     * 当前行的值设置完毕, 加入到批量中
+     */
+    void addRow() throws Exception;
+
+    /**
+     * 把批量中的数据写出去, 不提交事务
+     */
+    void flush() throws Exception;
+
+    /**
+     * 写出剩余的数据并提交事务
+     */
+    void commit() throws Exception;
+
+    /**
+     * 丢弃批量中还未写出的数据并回滚事务
+     */
+    void rollback();
+
+    /**
+     * 已经加入的行数
+     */
+    long getRowCount();
+
+    @Override
+    void close();
+}
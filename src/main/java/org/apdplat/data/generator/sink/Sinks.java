@@ -0,0 +1,252 @@
+package org.apdplat.data.generator.sink;
+
+import org.apache.orc.CompressionKind;
+import org.apache.orc.TypeDescription;
+import org.apdplat.data.generator.mysql.MySQLUtils;
+import org.apdplat.data.generator.utils.Config;
+import org.apdplat.data.generator.utils.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 根据配置项generator.sink创建RowSink, 并汇总每张表的写出统计
+ * 可选值: mysql(默认), blackhole, file(按hive_ddl.sql的表定义导出分片文本文件, 不经过MySQL)
+ * 写MySQL时插入的方式由mysql.write(所有表)或者mysql.write.表名(单独一张表)指定:
+ * batch(默认, JDBC批处理), multirow(多行合并成一条insert), load(LOAD DATA LOCAL INFILE流式写入)
+ */
+public class Sinks {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Sinks.class);
+
+    public static final String MYSQL = "mysql";
+    public static final String BLACKHOLE = "blackhole";
+    public static final String FILE = "file";
+    // file方式的file.format=orc, 只用于统计
+    static final String ORC = "orc";
+
+    public static final String BATCH = "batch";
+    public static final String MULTIROW = "multirow";
+    public static final String LOAD = "load";
+
+    private static final String TYPE = Config.getStringValue("generator.sink", MYSQL);
+
+    private static final Map<String, Stats> STATS = new ConcurrentSkipListMap<>();
+    // file方式每张表的分片文件
+    private static final Map<String, PartFiles> FILES = new ConcurrentHashMap<>();
+    private static final Map<String, OrcFiles> ORC_FILES = new ConcurrentHashMap<>();
+    // 已经输出过写入方式的表
+    private static final Set<String> LOGGED = ConcurrentHashMap.newKeySet();
+    // 由其它分片或者上次运行写好的表, 只计算不写出
+    private static final Set<String> SKIPPED = ConcurrentHashMap.newKeySet();
+
+    private Sinks() {
+    }
+
+    public static String getType() {
+        return TYPE;
+    }
+
+    public static boolean isMySQL() {
+        return MYSQL.equals(TYPE);
+    }
+
+    /**
+     * 打开一个写指定表指定列的RowSink, 无法打开时返回null
+     */
+    public static RowSink open(String table, String... columns) {
+        return open(null, table, columns);
+    }
+
+    /**
+     * 打开一个RowSink, 如果shared不为null, 则和shared共用同一个数据库连接及事务
+     * 有外键关系的两张表需要在同一个事务中写入时使用, 由调用者保证先flush父表
+     * 子表缓存满了自动写出(multirow、load)时会先写出shared
+     */
+    public static RowSink open(RowSink shared, String table, String... columns) {
+        if (SKIPPED.contains(table)) {
+            return new BlackholeSink(table);
+        }
+        if (FILE.equals(TYPE)) {
+            return openFile(table, columns);
+        }
+        if (!MYSQL.equals(TYPE)) {
+            return openSql(shared, table, MySQLSink.insertSql(table, columns));
+        }
+        String strategy = getWriteStrategy(table);
+        if (LOGGED.add(table)) {
+            LOGGER.info("表 {} 的写入方式: {}", table, strategy);
+        }
+        switch (strategy) {
+            case BATCH:
+                return openMySQL(shared, table, (con, own) -> new MySQLSink(table, MySQLSink.insertSql(table, columns), con, own));
+            case MULTIROW:
+                int rows = Config.getIntValue("mysql.write.multirowRows", 1000);
+                return openMySQL(shared, table, (con, own) -> new MultiRowSink(table, columns, rows, con, own));
+            case LOAD:
+                return openMySQL(shared, table, (con, own) -> new LoadDataSink(table, columns, con, own));
+            default:
+                throw new IllegalArgumentException("不支持的MySQL写入方式: " + strategy + ", table: " + table);
+        }
+    }
+
+    /**
+     * 之后打开这些表时返回BlackholeSink, 生成器照常计算其它表需要的数据, 但不再写出
+     */
+    public static void skip(Collection<String> tables) {
+        SKIPPED.addAll(tables);
+        LOGGER.info("已经写好的表, 不再写出: {}", tables);
+    }
+
+    /**
+     * 表的插入方式, mysql.write.表名优先于mysql.write
+     */
+    public static String getWriteStrategy(String table) {
+        return Config.getStringValue("mysql.write." + table, Config.getStringValue("mysql.write", BATCH)).toLowerCase();
+    }
+
+    /**
+     * 打开一个按主键更新指定列的RowSink, 列序号依次为columns, 最后一列是keyColumn
+     * 只有mysql支持更新, 其它类型不支持时返回null
+     */
+    public static RowSink openUpdate(RowSink shared, String table, String keyColumn, String... columns) {
+        if (!MYSQL.equals(TYPE) && !BLACKHOLE.equals(TYPE)) {
+            LOGGER.error("generator.sink: {} 不支持更新, table: {}", TYPE, table);
+            return null;
+        }
+        return openSql(shared, table + " update", MySQLSink.updateSql(table, keyColumn, columns));
+    }
+
+    private static RowSink openSql(RowSink shared, String table, String sql) {
+        switch (TYPE) {
+            case BLACKHOLE:
+                return new BlackholeSink(table);
+            case MYSQL:
+                return openMySQL(shared, table, (con, own) -> new MySQLSink(table, sql, con, own));
+            default:
+                throw new IllegalArgumentException("不支持的generator.sink: " + TYPE);
+        }
+    }
+
+    /**
+     * 文件格式由file.format指定: hive(默认, 使用hive_ddl.sql中的分隔符), csv, tsv, orc
+     */
+    private static RowSink openFile(String table, String[] columns) {
+        String format = Config.getStringValue("file.format", "hive");
+        String delimiter;
+        switch (format) {
+            case ORC:
+                return openOrc(table, columns);
+            case "csv":
+                delimiter = ",";
+                break;
+            case "tsv":
+                delimiter = "\t";
+                break;
+            case "hive":
+                delimiter = HiveSchema.getDelimiter(table, ",");
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的file.format: " + format);
+        }
+        PartFiles parts = FILES.computeIfAbsent(table, key -> new PartFiles(new File(Config.getStringValue("file.dir", "data")), key,
+                Config.getLongValue("file.partSizeMB", 128) * 1024 * 1024));
+        return new FileSink(table, columns, parts, delimiter);
+    }
+
+    private static RowSink openOrc(String table, String[] columns) {
+        OrcFiles files = ORC_FILES.computeIfAbsent(table, key -> new OrcFiles(new File(Config.getStringValue("file.dir", "data")), key,
+                TypeDescription.fromString(OrcSink.schemaOf(key)),
+                Config.getLongValue("file.partSizeMB", 128) * 1024 * 1024,
+                CompressionKind.valueOf(Config.getStringValue("file.orc.compress", "zlib").toUpperCase()),
+                Config.getIntValue("file.orc.maxOpenWriters", 32)));
+        return new OrcSink(table, columns, files);
+    }
+
+    /**
+     * 生成结束时调用, 关闭所有导出文件
+     */
+    public static void finish() {
+        FILES.values().forEach(PartFiles::close);
+        FILES.clear();
+        ORC_FILES.values().forEach(OrcFiles::close);
+        ORC_FILES.clear();
+    }
+
+    /**
+     * shared是写MySQL的RowSink时共用它的连接, 否则从连接池获取新连接
+     */
+    private static RowSink openMySQL(RowSink shared, String table, MySQLSinkFactory factory) {
+        boolean own = !(shared instanceof AbstractMySQLSink);
+        Connection con = own ? MySQLUtils.getConnection() : ((AbstractMySQLSink) shared).getConnection();
+        if (con == null) {
+            return null;
+        }
+        try {
+            AbstractMySQLSink sink = factory.create(con, own);
+            if (!own) {
+                sink.setParent((AbstractMySQLSink) shared);
+            }
+            return sink;
+        } catch (Exception e) {
+            LOGGER.error("打开MySQL RowSink失败, table: {}", table, e);
+            if (own) {
+                MySQLUtils.close(con);
+            }
+            return null;
+        }
+    }
+
+    private interface MySQLSinkFactory {
+        AbstractMySQLSink create(Connection con, boolean ownConnection) throws SQLException;
+    }
+
+    static void record(String table, String type, long rows, long writeNanos) {
+        Stats stats = STATS.computeIfAbsent(table + "(" + type + ")", key -> new Stats());
+        stats.rows.add(rows);
+        stats.writeNanos.add(writeNanos);
+    }
+
+    /**
+     * BlackholeSink使用, 另外汇总写入值的校验和
+     */
+    static void record(String table, String type, long rows, long writeNanos, long checksum) {
+        record(table, type, rows, writeNanos);
+        Stats stats = STATS.get(table + "(" + type + ")");
+        stats.checksum.add(checksum);
+        stats.hasChecksum = true;
+    }
+
+    /**
+     * 输出每张表的写出行数及花在写出上的时间, 总耗时减去写出时间即为生成数据的时间
+     */
+    public static void report(long totalMillis) {
+        long totalWriteNanos = 0;
+        for (Map.Entry<String, Stats> entry : STATS.entrySet()) {
+            long rows = entry.getValue().rows.sum();
+            long writeNanos = entry.getValue().writeNanos.sum();
+            totalWriteNanos += writeNanos;
+            LOGGER.info("表: {}, 行数: {}, 写出耗时(所有线程累计): {}, 单线程写出速度: {} 行/秒", entry.getKey(), rows,
+                    TimeUtils.getTimeDes(writeNanos / 1000000), writeNanos == 0 ? 0 : rows * 1000000000L / writeNanos);
+            if (entry.getValue().hasChecksum) {
+                LOGGER.info("表: {}, 写入值的校验和: {}", entry.getKey(), entry.getValue().checksum.sum());
+            }
+        }
+        LOGGER.info("总耗时: {}, 写出耗时(所有线程累计): {}", TimeUtils.getTimeDes(totalMillis), TimeUtils.getTimeDes(totalWriteNanos / 1000000));
+    }
+
+    private static class Stats {
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder writeNanos = new LongAdder();
+        private final LongAdder checksum = new LongAdder();
+        private volatile boolean hasChecksum;
+    }
+}
@@ -55,6 +55,27 @@ public class Config {
         return CONFIG.get(key);
     }
 
+    public static String getStringValue(String key, String defaultValue) {
+        String value = CONFIG.get(key);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * 所有以prefix开头的配置项
+     */
+    public static Map<String, String> getValues(String prefix) {
+        Map<String, String> values = new HashMap<>();
+        CONFIG.forEach((key, value) -> {
+            if (key.startsWith(prefix)) {
+                values.put(key, value);
+            }
+        });
+        return values;
+    }
+
     public static int getIntValue(String key) {
         String value = CONFIG.get(key);
         if (value == null) {
@@ -62,4 +83,28 @@ public class Config {
         }
         return Integer.parseInt(value);
     }
+
+    public static int getIntValue(String key, int defaultValue) {
+        String value = CONFIG.get(key);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value);
+    }
+
+    public static long getLongValue(String key, long defaultValue) {
+        String value = CONFIG.get(key);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        return Long.parseLong(value);
+    }
+
+    public static boolean getBooleanValue(String key, boolean defaultValue) {
+        String value = CONFIG.get(key);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        return "true".equalsIgnoreCase(value);
+    }
 }
@@ -0,0 +1,118 @@
+package org.apdplat.data.generator.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 基于计数器的随机数, 第N行用到的随机数只由(全局种子, 表名, N)决定
+ * 任何线程都可以按任意顺序生成任意范围的行, 相同的种子在不同的运行、不同的线程数下得到完全相同的数据
+ * 全局种子通过generator.seed配置, 没有配置时随机选择一个并输出到日志, 便于重现
+ * 继承java.util.Random, 可以传给只接受Random的代码, 非线程安全, 每个线程使用自己的实例
+ */
+public class RowRandom extends Random {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RowRandom.class);
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    // 继续上次没有完成的运行时会换成上次的种子, 见resume
+    private static volatile long SEED = initSeed();
+
+    private final long streamSeed;
+    private long state;
+
+    public RowRandom(String stream) {
+        this.streamSeed = seedOf(stream);
+        seek(0);
+    }
+
+    private static long initSeed() {
+        long seed = Config.getLongValue("generator.seed", Long.MIN_VALUE);
+        if (seed == Long.MIN_VALUE) {
+            seed = mix(System.nanoTime() ^ System.currentTimeMillis());
+            LOGGER.info("没有配置generator.seed, 本次使用的随机种子: {}", seed);
+        } else {
+            LOGGER.info("随机种子: {}", seed);
+        }
+        return seed;
+    }
+
+    public static long getSeed() {
+        return SEED;
+    }
+
+    /**
+     * 使用上次运行的种子, 必须在创建任何RowRandom之前调用
+     */
+    public static void resume(long seed) {
+        SEED = seed;
+        LOGGER.info("使用上次运行的随机种子: {}", seed);
+    }
+
+    /**
+     * 某个表(或者其它用途)的随机数种子, 也可以用来初始化单线程顺序使用的java.util.Random
+     */
+    public static long seedOf(String stream) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : stream.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return mix(SEED ^ mix(hash));
+    }
+
+    /**
+     * 定位到第row行, 之后的随机数序列只和row有关, 和之前生成过哪些行无关
+     */
+    public RowRandom seek(long row) {
+        state = mix(streamSeed ^ mix(row * GAMMA));
+        return this;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        state += GAMMA;
+        return mix(state);
+    }
+
+    /**
+     * 返回[0, bound)之间的整数
+     */
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound必须大于0: " + bound);
+        }
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * 返回[0, 1)之间的小数
+     */
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * splitmix64的混合函数
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
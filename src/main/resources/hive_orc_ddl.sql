@@ -0,0 +1,78 @@
+CREATE EXTERNAL TABLE `area` (
+  `id` int ,
+  `city` varchar(10) ,
+  `city_full` varchar(50) ,
+  `province` varchar(10) ,
+  `province_full` varchar(50) ,
+  `longitude` float ,
+  `latitude` float
+)
+stored as orc location '/user/hive/warehouse/area';
+CREATE EXTERNAL TABLE `contract` (
+  `id` int ,
+  `contract_price` float ,
+  `state` varchar(50) ,
+  `sign_day` varchar(19) ,
+  `sales_staff_id` int ,
+  `customer_id` int
+)
+PARTITIONED BY (`year` int, `month` int)
+stored as orc location '/user/hive/warehouse/contract';
+MSCK REPAIR TABLE `contract`;
+CREATE EXTERNAL TABLE `contract_detail` (
+  `id` int ,
+  `item_id` int ,
+  `item_quantity` int ,
+  `detail_price` float ,
+  `contract_id` int,
+  `sign_day` varchar(19)
+)
+PARTITIONED BY (`year` int, `month` int)
+stored as orc location '/user/hive/warehouse/contract_detail';
+MSCK REPAIR TABLE `contract_detail`;
+CREATE EXTERNAL TABLE `customer` (
+  `id` int ,
+  `name` varchar(255) ,
+  `gender` varchar(10) ,
+  `area_id` int ,
+  `age` int
+)
+stored as orc location '/user/hive/warehouse/customer';
+CREATE EXTERNAL TABLE `day_dimension` (
+  `day_str` varchar(19) ,
+  `dayofweek` int ,
+  `weekofyear` int ,
+  `month` int ,
+  `dayofmonth` int ,
+  `quarter` int ,
+  `year` int ,
+  `dayofyear` int
+)
+stored as orc location '/user/hive/warehouse/day_dimension';
+CREATE EXTERNAL TABLE `item` (
+  `id` int ,
+  `name` varchar(255) ,
+  `price` float ,
+  `category_id` int,
+  `brand_id` int,
+  `discount` float,
+  `color` varchar(10)
+)
+stored as orc location '/user/hive/warehouse/item';
+CREATE EXTERNAL TABLE `sales_staff` (
+  `id` int ,
+  `name` varchar(255) ,
+  `gender` varchar(10) ,
+  `area_id` int
+)
+stored as orc location '/user/hive/warehouse/sales_staff';
+CREATE EXTERNAL TABLE `brand` (
+  `id` int ,
+  `name` varchar(100)
+)
+stored as orc location '/user/hive/warehouse/brand';
+CREATE EXTERNAL TABLE `category` (
+  `id` int ,
+  `name` varchar(100)
+)
+stored as orc location '/user/hive/warehouse/category';